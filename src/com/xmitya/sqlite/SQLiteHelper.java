@@ -1,11 +1,22 @@
 package com.xmitya.sqlite;
 
+import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+import com.xmitya.sqlite.orm.DatabaseTuning;
+import com.xmitya.sqlite.orm.LazyBlob;
 import com.xmitya.sqlite.orm.SQLiteField;
+import com.xmitya.sqlite.orm.SQLiteFullText;
 import com.xmitya.sqlite.orm.SQLiteTable;
 
 public class SQLiteHelper extends SQLiteOpenHelper {
@@ -14,6 +25,13 @@ public class SQLiteHelper extends SQLiteOpenHelper {
     private static String databaseName = DATABASE_NAME;
     private static final int DATABASE_VERSION = 6;
     private static int databaseVersion = DATABASE_VERSION;
+    /**
+     * Table which keeps fingerprint of schema created by this helper.
+     */
+    public static final String METADATA_TABLE = "clear_orm_metadata";
+    private static final String FINGERPRINT_KEY = "schema_fingerprint";
+
+    private static DatabaseTuning tuning;
 
     /**
      * Entities classes which will be processed with {@link com.xmitya.sqlite.orm.Dao}
@@ -62,6 +80,41 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         SQLiteHelper.databaseVersion = databaseVersion;
     }
 
+    public static DatabaseTuning getTuning() {
+        return tuning;
+    }
+
+    /**
+     * Set PRAGMAs which will be applied to every opened database, null
+     * keeps SQLite defaults. Database is kept on single connection, so
+     * PRAGMAs apply to all reads and writes.
+     *
+     * @param tuning
+     */
+    public static void setTuning(DatabaseTuning tuning) {
+        SQLiteHelper.tuning = tuning;
+    }
+
+    /**
+     * Apply {@link DatabaseTuning} to connection. Values which SQLite didn't
+     * accept are logged.
+     *
+     * @param database
+     */
+    public static void applyTuning(SQLiteDatabase database) {
+        if (tuning == null) {
+            return;
+        }
+        for (String mismatch : tuning.apply(database)) {
+            Log.w("SQLiteHelper", "PRAGMA not applied, " + mismatch);
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase database) {
+        applyTuning(database);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase database) {
         createTablesIfNotExists(database);
@@ -72,6 +125,7 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         if (newVersion > oldVersion) {
             dropTables(database);
             createTablesIfNotExists(database);
+            storeSchemaFingerprint(database);
         }
         database.setVersion(newVersion);
     }
@@ -100,6 +154,106 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Fingerprint of schema described by internal <b>entities</b> array and
+     * database version. Changes when any table, column or annotation
+     * attribute which affects DDL changes.
+     *
+     * @return hex string of SHA-1 digest.
+     */
+    public static String getSchemaFingerprint() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(databaseVersion).append('\n');
+        for (Class<?> clazz : entities) {
+            for (String statement : createTableStatements(clazz)) {
+                builder.append(statement).append('\n');
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(builder.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Shows if database contains schema with the same fingerprint as
+     * {@link #getSchemaFingerprint()}.
+     *
+     * @param database
+     * @return
+     */
+    public boolean isSchemaCurrent(SQLiteDatabase database) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT value FROM " + METADATA_TABLE
+                    + " WHERE key=?", new String[]{FINGERPRINT_KEY});
+            return cursor.moveToFirst()
+                    && getSchemaFingerprint().equals(cursor.getString(0));
+        } catch (SQLiteException e) {
+            // metadata table doesn't exist yet
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Save {@link #getSchemaFingerprint()} to database, so next
+     * {@link #isSchemaCurrent(SQLiteDatabase)} returns true.
+     *
+     * @param database writable database.
+     */
+    public void storeSchemaFingerprint(SQLiteDatabase database) {
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + METADATA_TABLE
+                + " (key TEXT PRIMARY KEY, value TEXT);");
+        database.execSQL("INSERT OR REPLACE INTO " + METADATA_TABLE
+                + " (key, value) VALUES(?, ?);",
+                new Object[]{FINGERPRINT_KEY, getSchemaFingerprint()});
+    }
+
+    /**
+     * Remove stored fingerprint, so schema will be verified on next start.
+     *
+     * @param database writable database.
+     */
+    private static void invalidateSchemaFingerprint(SQLiteDatabase database) {
+        try {
+            database.execSQL("DELETE FROM " + METADATA_TABLE + " WHERE key=?;",
+                    new Object[]{FINGERPRINT_KEY});
+        } catch (SQLiteException e) {
+            // metadata table doesn't exist, nothing to invalidate
+        }
+    }
+
+    /**
+     * Creates tables and upgrades database only if stored schema fingerprint
+     * differs from current one.
+     *
+     * @param database writable database.
+     * @return true if DDL was executed, false if schema is up to date.
+     */
+    public boolean ensureSchema(SQLiteDatabase database) {
+        if (isSchemaCurrent(database)) {
+            return false;
+        }
+        onCreate(database);
+        upgradeIfNeed(database);
+        storeSchemaFingerprint(database);
+        return true;
+    }
+
     /**
      * Creates tables enumerated in internal <b>entities</b> array if they not exists in database.
      */
@@ -127,10 +281,128 @@ public class SQLiteHelper extends SQLiteOpenHelper {
      * @param clazz    Entity class annotated with {@link SQLiteTable}
      */
     public static void createTableIfNotExists(SQLiteDatabase database, Class<?> clazz) {
+        SQLiteTable tableNameAn = clazz.getAnnotation(SQLiteTable.class);
+        String fullTextTable = null;
+        boolean indexRows = false;
+        if (tableNameAn != null && !getFullTextColumns(clazz).isEmpty()) {
+            fullTextTable = getFullTextTableName(tableNameAn.tableName());
+            indexRows = !tableExists(database, fullTextTable);
+        }
+        for (String statement : createTableStatements(clazz)) {
+            database.execSQL(statement);
+        }
+        if (indexRows) {
+            // index rows which were inserted before full text table appeared
+            database.execSQL("INSERT INTO " + fullTextTable + "(" + fullTextTable
+                    + ") VALUES('rebuild');");
+        }
+    }
+
+    private static boolean tableExists(SQLiteDatabase database, String tableName) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT 1 FROM sqlite_master WHERE type='table' AND name=?",
+                    new String[]{tableName});
+            return cursor.moveToFirst();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Name of full text table for entity table.
+     *
+     * @param tableName entity table name.
+     * @return
+     */
+    public static String getFullTextTableName(String tableName) {
+        return tableName + "_fts";
+    }
+
+    /**
+     * Columns of fields annotated with {@link SQLiteFullText}.
+     *
+     * @param clazz entity class.
+     * @return column names in order of declaration.
+     * @throws IllegalArgumentException if annotated field is not String, or
+     *                                  if id of entity is not integer.
+     */
+    public static List<String> getFullTextColumns(Class<?> clazz) {
+        List<String> columns = new ArrayList<String>();
+        boolean integerId = false;
+        for (Field field : clazz.getDeclaredFields()) {
+            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
+            if (fieldAn != null && fieldAn.id()) {
+                integerId = fieldAn.autoGenerate() || isInteger(field.getType());
+                break;
+            }
+        }
+        for (Field field : clazz.getDeclaredFields()) {
+            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
+            if (fieldAn == null || field.getAnnotation(SQLiteFullText.class) == null)
+                continue;
+            if (field.getType() != String.class || fieldAn.compress()) {
+                throw new IllegalArgumentException(String.format(
+                        "Full text field %s should be not compressed String", field.getName()));
+            }
+            // full text index is keyed by rowid, which VACUUM may renumber
+            // unless it is aliased by INTEGER PRIMARY KEY
+            if (!integerId) {
+                throw new IllegalArgumentException(String.format(
+                        "Class %s with full text fields should have integer id",
+                        clazz.getName()));
+            }
+            columns.add(fieldAn.columnName());
+        }
+        return columns;
+    }
+
+    /**
+     * FTS4 table with external content and triggers which keep it in sync
+     * with entity table.
+     *
+     * @param tableName entity table name.
+     * @param columns   full text columns.
+     * @param statements list for created statements.
+     */
+    private static void addFullTextStatements(String tableName, List<String> columns,
+                                              List<String> statements) {
+        String ftsTable = getFullTextTableName(tableName);
+        StringBuilder names = new StringBuilder();
+        StringBuilder newValues = new StringBuilder();
+        for (String column : columns) {
+            names.append(", ").append(column);
+            newValues.append(", new.").append(column);
+        }
+        statements.add("CREATE VIRTUAL TABLE IF NOT EXISTS " + ftsTable
+                + " USING fts4(content=\"" + tableName + "\"" + names + ");");
+        String delete = " BEGIN DELETE FROM " + ftsTable + " WHERE docid=old.rowid; END;";
+        String insert = " BEGIN INSERT INTO " + ftsTable + "(docid" + names
+                + ") VALUES(new.rowid" + newValues + "); END;";
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_bu BEFORE UPDATE ON "
+                + tableName + delete);
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_bd BEFORE DELETE ON "
+                + tableName + delete);
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_au AFTER UPDATE ON "
+                + tableName + insert);
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + ftsTable + "_ai AFTER INSERT ON "
+                + tableName + insert);
+    }
+
+    /**
+     * DDL statements which create table for entity if it not exists.
+     *
+     * @param clazz Entity class annotated with {@link SQLiteTable}
+     * @return statements or empty list if class not annotated.
+     */
+    public static List<String> createTableStatements(Class<?> clazz) {
+        List<String> statements = new ArrayList<String>();
         StringBuilder builder = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
         SQLiteTable tableNameAn = clazz.getAnnotation(SQLiteTable.class);
         // skip if table not annotated
-        if (tableNameAn == null) return;
+        if (tableNameAn == null) return statements;
         builder.append(tableNameAn.tableName()).append(" (");
         // search fields and column names
         Field[] fields = clazz.getDeclaredFields();
@@ -140,17 +412,111 @@ public class SQLiteHelper extends SQLiteOpenHelper {
             if (fieldAn == null) continue;
             builder.append(" ").append(fieldAn.columnName());
             if (fieldAn.id()) {
+                // INTEGER PRIMARY KEY is alias of rowid, required for AUTOINCREMENT
+                if (fieldAn.autoGenerate() || isInteger(field.getType())) {
+                    builder.append(" INTEGER");
+                }
                 builder.append(" PRIMARY KEY");
-                if (fieldAn.autoGenerate()) {
+                if (fieldAn.autoGenerate() && fieldAn.monotonic()) {
                     builder.append(" AUTOINCREMENT");
                 }
+            } else if (!fieldAn.compress() && getNumericAffinity(field.getType()) != null) {
+                // numeric affinity makes string arguments compare as numbers
+                builder.append(" ").append(getNumericAffinity(field.getType()));
             }
             builder.append(",");
         }
         //remove last comma
         builder.deleteCharAt(builder.length() - 1);
         builder.append(");");
-        database.execSQL(builder.toString());
+        statements.add(builder.toString());
+        List<String> fullTextColumns = getFullTextColumns(clazz);
+        if (!fullTextColumns.isEmpty()) {
+            addFullTextStatements(tableNameAn.tableName(), fullTextColumns, statements);
+        }
+        if (hasBlobColumns(clazz)) {
+            addChunkStatements(tableNameAn.tableName(), getIdColumn(clazz), statements);
+        }
+        return statements;
+    }
+
+    /**
+     * Name of table which keeps large BLOB values of entity table by chunks.
+     *
+     * @param tableName entity table name.
+     * @return
+     */
+    public static String getChunkTableName(String tableName) {
+        return tableName + "_chunks";
+    }
+
+    /**
+     * Shows if entity has <code>byte[]</code> or {@link LazyBlob} fields.
+     *
+     * @param clazz entity class.
+     * @return
+     */
+    public static boolean hasBlobColumns(Class<?> clazz) {
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.getAnnotation(SQLiteField.class) != null
+                    && (field.getType() == byte[].class || field.getType() == LazyBlob.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getIdColumn(Class<?> clazz) {
+        for (Field field : clazz.getDeclaredFields()) {
+            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
+            if (fieldAn != null && fieldAn.id()) {
+                return fieldAn.columnName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Chunk table and trigger which deletes chunks together with row. Chunks
+     * are keyed by id of row as text, so lookups don't depend on rowid.
+     *
+     * @param tableName  entity table name.
+     * @param idColumn   id column of entity table.
+     * @param statements list for created statements.
+     */
+    private static void addChunkStatements(String tableName, String idColumn,
+                                           List<String> statements) {
+        String chunkTable = getChunkTableName(tableName);
+        statements.add("CREATE TABLE IF NOT EXISTS " + chunkTable
+                + " (owner TEXT NOT NULL, col TEXT NOT NULL, seq INTEGER NOT NULL, data BLOB,"
+                + " PRIMARY KEY (owner, col, seq));");
+        statements.add("CREATE TRIGGER IF NOT EXISTS " + chunkTable + "_ad AFTER DELETE ON "
+                + tableName + " BEGIN DELETE FROM " + chunkTable
+                + " WHERE owner=CAST(old." + idColumn + " AS TEXT); END;");
+    }
+
+    private static boolean isInteger(Class<?> type) {
+        return type == int.class || type == Integer.class
+                || type == long.class || type == Long.class;
+    }
+
+    /**
+     * Declared type of column for numeric field.
+     *
+     * @param type field type.
+     * @return INTEGER, REAL or null if field isn't numeric.
+     */
+    public static String getNumericAffinity(Class<?> type) {
+        if (isInteger(type) || type == short.class || type == Short.class
+                || type == byte.class || type == Byte.class
+                || type == boolean.class || type == Boolean.class) {
+            return "INTEGER";
+        }
+        if (type == double.class || type == Double.class
+                || type == float.class || type == Float.class) {
+            return "REAL";
+        }
+        return null;
     }
 
     /**
@@ -166,5 +532,11 @@ public class SQLiteHelper extends SQLiteOpenHelper {
         if (tableNameAn == null) return;
         builder.append(tableNameAn.tableName()).append(";");
         database.execSQL(builder.toString());
+        // triggers are dropped together with table
+        database.execSQL("DROP TABLE IF EXISTS "
+                + getFullTextTableName(tableNameAn.tableName()) + ";");
+        database.execSQL("DROP TABLE IF EXISTS "
+                + getChunkTableName(tableNameAn.tableName()) + ";");
+        invalidateSchemaFingerprint(database);
     }
 }
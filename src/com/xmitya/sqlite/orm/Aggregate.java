@@ -0,0 +1,51 @@
+package com.xmitya.sqlite.orm;
+
+/**
+ * SQL aggregate functions supported by {@link com.xmitya.sqlite.orm.Dao}.
+ *
+ * @author xmitya
+ */
+public enum Aggregate {
+
+    COUNT("COUNT"),
+    MIN("MIN"),
+    MAX("MAX"),
+    /**
+     * Uses SQLite <code>TOTAL()</code>, which returns 0.0 for empty set
+     * instead of NULL.
+     */
+    SUM("TOTAL"),
+    AVG("AVG");
+
+    private final String function;
+
+    Aggregate(String function) {
+        this.function = function;
+    }
+
+    /**
+     * SQL expression for column.
+     *
+     * @param column
+     * @param numeric true if column holds numbers stored as text, values
+     *                are cast to NUMERIC.
+     * @return
+     */
+    String expression(String column, boolean numeric) {
+        if (numeric && this != COUNT) {
+            column = numeric(column);
+        }
+        return function + "(" + column + ")";
+    }
+
+    /**
+     * Expression which compares values of column as numbers. Tables created
+     * before numeric columns got declared type hold numbers as text.
+     *
+     * @param column
+     * @return
+     */
+    static String numeric(String column) {
+        return "CAST(" + column + " AS NUMERIC)";
+    }
+}
@@ -0,0 +1,91 @@
+package com.xmitya.sqlite.orm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+/**
+ * Reads BLOB column by chunks. Large values are read from chunk table row by
+ * row, values stored in entity row are read with <code>substr()</code>.
+ * Java heap holds only one chunk.
+ *
+ * @author xmitya
+ */
+class BlobInputStream extends InputStream {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Dao<?> dao;
+    private final String column;
+    private final Object id;
+    private final long length;
+    private final boolean chunked;
+    private long position;
+    private int seq;
+    private byte[] chunk;
+    private int chunkPosition;
+
+    /**
+     * @param length  length of value.
+     * @param chunked true if value is kept in chunk table.
+     */
+    BlobInputStream(Dao<?> dao, String column, Object id, long length, boolean chunked) {
+        this.dao = dao;
+        this.column = column;
+        this.id = id;
+        this.length = length;
+        this.chunked = chunked;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillChunk()) {
+            return -1;
+        }
+        return chunk[chunkPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (!fillChunk()) {
+            return -1;
+        }
+        int len = Math.min(count, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, len);
+        chunkPosition += len;
+        return len;
+    }
+
+    @Override
+    public int available() {
+        return chunk == null ? 0 : chunk.length - chunkPosition;
+    }
+
+    private boolean fillChunk() throws IOException {
+        if (chunk != null && chunkPosition < chunk.length) {
+            return true;
+        }
+        if (position >= length) {
+            return false;
+        }
+        try {
+            if (chunked) {
+                chunk = dao.readBlobChunk(id, column, seq++);
+            } else {
+                int len = (int) Math.min(CHUNK_SIZE, length - position);
+                chunk = dao.readBlobRange(id, column, position, len);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage());
+        }
+        if (chunk == null || chunk.length == 0) {
+            return false;
+        }
+        chunkPosition = 0;
+        position += chunk.length;
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package com.xmitya.sqlite.orm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+
+/**
+ * Writes BLOB column by chunks. Every full chunk is inserted to chunk table
+ * as separate staged row, so Java heap holds only one chunk and no write
+ * rewrites previously written data. On close staged chunks replace previous
+ * value and column gets length of value, or value itself if it fits single
+ * chunk.
+ *
+ * @author xmitya
+ */
+class BlobOutputStream extends OutputStream {
+
+    private final Dao<?> dao;
+    private final String column;
+    private final Object id;
+    private final String staged;
+    private final byte[] chunk = new byte[BlobInputStream.CHUNK_SIZE];
+    private int size;
+    private int seq;
+    private long length;
+    private boolean closed;
+
+    /**
+     * @param staged <code>col</code> for chunks until stream is closed.
+     */
+    BlobOutputStream(Dao<?> dao, String column, Object id, String staged) {
+        this.dao = dao;
+        this.column = column;
+        this.id = id;
+        this.staged = staged;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (size == chunk.length) {
+            writeChunk();
+        }
+        chunk[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (size == chunk.length) {
+                writeChunk();
+            }
+            int len = Math.min(count, chunk.length - size);
+            System.arraycopy(buffer, offset, chunk, size, len);
+            size += len;
+            offset += len;
+            count -= len;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (seq == 0) {
+                // value fits single chunk, keep it in row
+                byte[] data = new byte[size];
+                System.arraycopy(chunk, 0, data, 0, size);
+                dao.commitBlob(id, column, null, data);
+            } else {
+                if (size > 0) {
+                    writeChunk();
+                }
+                dao.commitBlob(id, column, staged, Long.valueOf(length));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage());
+        }
+        closed = true;
+        dao.notifyChanged(id);
+    }
+
+    private void writeChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        byte[] data = new byte[size];
+        System.arraycopy(chunk, 0, data, 0, size);
+        try {
+            dao.writeBlobChunk(id, staged, seq, data);
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage());
+        }
+        seq++;
+        length += size;
+        size = 0;
+    }
+}
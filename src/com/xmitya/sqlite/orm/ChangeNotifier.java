@@ -0,0 +1,147 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dispatches change notifications to {@link ChangeObserver}. Changes made
+ * inside transaction are collected per thread and delivered when outermost
+ * transaction is committed, or dropped if it is rolled back. One notifier is
+ * shared by all DAOs of {@link com.xmitya.sqlite.orm.DaoFactory}, so writer
+ * DAO notifies observers registered on reader DAO.
+ *
+ * @author xmitya
+ */
+class ChangeNotifier {
+
+    private final Map<String, List<ChangeObserver>> observers =
+            new HashMap<String, List<ChangeObserver>>();
+
+    private final ThreadLocal<Transaction> transactions = new ThreadLocal<Transaction>();
+
+    /**
+     * Changes of one thread transaction. Like SQLite transactions in Android,
+     * nested transaction which isn't marked successful rolls back the whole one.
+     */
+    private static class Transaction {
+        final List<Boolean> successful = new ArrayList<Boolean>();
+        final Map<String, Set<String>> changes = new LinkedHashMap<String, Set<String>>();
+        boolean failed;
+    }
+
+    void register(String tableName, ChangeObserver observer) {
+        synchronized (observers) {
+            List<ChangeObserver> list = observers.get(tableName);
+            if (list == null) {
+                list = new CopyOnWriteArrayList<ChangeObserver>();
+                observers.put(tableName, list);
+            }
+            list.add(observer);
+        }
+    }
+
+    void unregister(String tableName, ChangeObserver observer) {
+        synchronized (observers) {
+            List<ChangeObserver> list = observers.get(tableName);
+            if (list != null) {
+                list.remove(observer);
+            }
+        }
+    }
+
+    private List<ChangeObserver> getObservers(String tableName) {
+        synchronized (observers) {
+            List<ChangeObserver> list = observers.get(tableName);
+            return list == null ? Collections.<ChangeObserver>emptyList() : list;
+        }
+    }
+
+    void begin() {
+        Transaction transaction = transactions.get();
+        if (transaction == null) {
+            transaction = new Transaction();
+            transactions.set(transaction);
+        }
+        transaction.successful.add(Boolean.FALSE);
+    }
+
+    void setSuccessful() {
+        Transaction transaction = transactions.get();
+        if (transaction != null) {
+            transaction.successful.set(transaction.successful.size() - 1, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @param committed false if ending of database transaction failed, then
+     *                  collected changes are dropped.
+     */
+    void end(boolean committed) {
+        Transaction transaction = transactions.get();
+        if (transaction == null) {
+            return;
+        }
+        if (!transaction.successful.remove(transaction.successful.size() - 1) || !committed) {
+            transaction.failed = true;
+        }
+        if (!transaction.successful.isEmpty()) {
+            return;
+        }
+        transactions.remove();
+        if (!transaction.failed) {
+            for (Map.Entry<String, Set<String>> entry : transaction.changes.entrySet()) {
+                dispatch(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Register change of row. Delivered immediately if there is no transaction
+     * in current thread.
+     *
+     * @param tableName
+     * @param id        id of changed row, null if changed rows are unknown.
+     */
+    void changed(String tableName, String id) {
+        Transaction transaction = transactions.get();
+        if (transaction == null) {
+            dispatch(tableName, id == null ? null : Collections.singleton(id));
+            return;
+        }
+        if (transaction.changes.containsKey(tableName)) {
+            Set<String> ids = transaction.changes.get(tableName);
+            if (ids != null) {
+                if (id == null) {
+                    transaction.changes.put(tableName, null);
+                } else {
+                    ids.add(id);
+                }
+            }
+        } else {
+            Set<String> ids = null;
+            if (id != null) {
+                ids = new HashSet<String>();
+                ids.add(id);
+            }
+            transaction.changes.put(tableName, ids);
+        }
+    }
+
+    private void dispatch(String tableName, Set<String> ids) {
+        List<ChangeObserver> list = getObservers(tableName);
+        if (list.isEmpty()) {
+            return;
+        }
+        Set<String> unmodifiable = ids == null ? null : Collections.unmodifiableSet(ids);
+        for (ChangeObserver observer : list) {
+            observer.onChange(tableName, unmodifiable);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.Set;
+
+/**
+ * Receives notifications about rows written through
+ * {@link com.xmitya.sqlite.orm.Dao}. Register with
+ * {@link com.xmitya.sqlite.orm.Dao#registerObserver(ChangeObserver)}.
+ *
+ * @author xmitya
+ */
+public interface ChangeObserver {
+
+    /**
+     * Invoked after write is committed. All changes made in one transaction
+     * started with {@link com.xmitya.sqlite.orm.Dao#beginTransaction()} are
+     * delivered with single call. Invoked on thread which committed changes.
+     *
+     * @param tableName changed table.
+     * @param ids       ids of inserted, updated or deleted rows, or null if
+     *                  changed rows are unknown and whole table should be reloaded.
+     */
+    void onChange(String tableName, Set<String> ids);
+}
@@ -0,0 +1,205 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.Arrays;
+
+import android.database.Cursor;
+
+/**
+ * Growable primitive array for reading table columns without boxing values
+ * and creating entities. Use one of implementations {@link Longs},
+ * {@link Ints} or {@link Doubles} with
+ * {@link com.xmitya.sqlite.orm.Dao#readColumns(String[], ColumnBuffer[], String, String...)}.
+ * NULL values are read as 0.
+ *
+ * @author xmitya
+ */
+public abstract class ColumnBuffer {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    protected int size;
+
+    /**
+     * Number of values in buffer.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all values, capacity stays the same so buffer may be reused.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Make sure that buffer can hold at least <b>capacity</b> values without
+     * growing.
+     *
+     * @param capacity
+     */
+    public abstract void ensureCapacity(int capacity);
+
+    /**
+     * Append value of current cursor row.
+     *
+     * @param cursor
+     * @param column column index in cursor.
+     */
+    abstract void read(Cursor cursor, int column);
+
+    static int grow(int length, int capacity) {
+        int newLength = Math.max(length + (length >> 1), DEFAULT_CAPACITY);
+        return Math.max(newLength, capacity);
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * Buffer for INTEGER columns read as long.
+     */
+    public static class Longs extends ColumnBuffer {
+
+        private long[] values;
+
+        public Longs() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Longs(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        public void add(long value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+        }
+
+        public long get(int index) {
+            checkIndex(index, size);
+            return values[index];
+        }
+
+        /**
+         * Copy of values with length equals to {@link #size()}.
+         *
+         * @return
+         */
+        public long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        @Override
+        void read(Cursor cursor, int column) {
+            add(cursor.getLong(column));
+        }
+    }
+
+    /**
+     * Buffer for INTEGER columns read as int.
+     */
+    public static class Ints extends ColumnBuffer {
+
+        private int[] values;
+
+        public Ints() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Ints(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        public void add(int value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+        }
+
+        public int get(int index) {
+            checkIndex(index, size);
+            return values[index];
+        }
+
+        /**
+         * Copy of values with length equals to {@link #size()}.
+         *
+         * @return
+         */
+        public int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        @Override
+        void read(Cursor cursor, int column) {
+            add(cursor.getInt(column));
+        }
+    }
+
+    /**
+     * Buffer for REAL columns.
+     */
+    public static class Doubles extends ColumnBuffer {
+
+        private double[] values;
+
+        public Doubles() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Doubles(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        public void ensureCapacity(int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+
+        public void add(double value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+        }
+
+        public double get(int index) {
+            checkIndex(index, size);
+            return values[index];
+        }
+
+        /**
+         * Copy of values with length equals to {@link #size()}.
+         *
+         * @return
+         */
+        public double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        @Override
+        void read(Cursor cursor, int column) {
+            add(cursor.getDouble(column));
+        }
+    }
+}
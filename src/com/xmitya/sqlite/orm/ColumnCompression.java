@@ -0,0 +1,253 @@
+package com.xmitya.sqlite.orm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of fields annotated with {@link SQLiteField#compress()}.
+ * Values are stored as BLOB with 3 byte header: 2 magic bytes and method
+ * (stored as is or compressed with codec). Strings shorter than threshold
+ * are stored as plain TEXT. Default codec is {@link Deflate} with fastest
+ * level, another one may be set with {@link #setCodec(Codec)} before any
+ * data is written.
+ *
+ * @author xmitya
+ */
+public class ColumnCompression {
+
+    private static final byte MAGIC_0 = (byte) 0xCE;
+    private static final byte MAGIC_1 = (byte) 0x0A;
+    private static final byte STORED = 0;
+    private static final byte COMPRESSED = 1;
+    private static final int HEADER_SIZE = 3;
+
+    private static Codec codec = new Deflate(Deflater.BEST_SPEED);
+
+    /**
+     * Streaming compression algorithm.
+     */
+    public interface Codec {
+
+        /**
+         * Wrap stream which receives compressed data. Closing returned stream
+         * should finish compression and close <b>out</b>.
+         *
+         * @param out
+         * @return
+         * @throws java.io.IOException
+         */
+        OutputStream compress(OutputStream out) throws IOException;
+
+        /**
+         * Wrap stream of compressed data.
+         *
+         * @param in
+         * @return
+         * @throws java.io.IOException
+         */
+        InputStream decompress(InputStream in) throws IOException;
+    }
+
+    /**
+     * Deflate codec from java.util.zip.
+     */
+    public static class Deflate implements Codec {
+
+        private final int level;
+
+        /**
+         * @param level compression level from {@link Deflater#BEST_SPEED} to
+         *              {@link Deflater#BEST_COMPRESSION}.
+         */
+        public Deflate(int level) {
+            this.level = level;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            final Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            final Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+
+    private ColumnCompression() {
+    }
+
+    public static Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set codec for all compressed columns. Data written with previous codec
+     * can't be read after change.
+     *
+     * @param codec
+     */
+    public static void setCodec(Codec codec) {
+        ColumnCompression.codec = codec;
+    }
+
+    /**
+     * Encode value for storing.
+     *
+     * @param value     String or byte[].
+     * @param threshold values shorter than threshold are not compressed.
+     * @return String for short strings, otherwise byte[] with header.
+     * @throws java.io.IOException
+     */
+    static Object encode(Object value, int threshold) throws IOException {
+        if (value instanceof String) {
+            String string = (String) value;
+            if (string.length() < threshold) {
+                return string;
+            }
+            return encodeBytes(string.getBytes("UTF-8"), threshold);
+        }
+        if (value instanceof byte[]) {
+            return encodeBytes((byte[]) value, threshold);
+        }
+        return value;
+    }
+
+    private static byte[] encodeBytes(byte[] data, int threshold) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                data.length < threshold ? data.length + HEADER_SIZE : data.length / 2 + HEADER_SIZE);
+        if (data.length < threshold) {
+            writeHeader(buffer, STORED);
+            buffer.write(data);
+            return buffer.toByteArray();
+        }
+        writeHeader(buffer, COMPRESSED);
+        OutputStream out = codec.compress(buffer);
+        out.write(data);
+        out.close();
+        if (buffer.size() >= data.length + HEADER_SIZE) {
+            // incompressible data
+            buffer.reset();
+            writeHeader(buffer, STORED);
+            buffer.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void writeHeader(OutputStream out, byte method) throws IOException {
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(method);
+    }
+
+    /**
+     * Stream which compresses everything written into <b>out</b>.
+     *
+     * @param out
+     * @return
+     * @throws java.io.IOException
+     */
+    static OutputStream compressingStream(OutputStream out) throws IOException {
+        writeHeader(out, COMPRESSED);
+        return codec.compress(out);
+    }
+
+    /**
+     * Decode stored value. Values without header are returned as is, so
+     * data written before compression was enabled stays readable.
+     *
+     * @param data
+     * @return
+     * @throws java.io.IOException
+     */
+    static byte[] decode(byte[] data) throws IOException {
+        if (data == null || !hasHeader(data)) {
+            return data;
+        }
+        if (data[2] == STORED) {
+            byte[] result = new byte[data.length - HEADER_SIZE];
+            System.arraycopy(data, HEADER_SIZE, result, 0, result.length);
+            return result;
+        }
+        InputStream in = codec.decompress(new ByteArrayInputStream(data, HEADER_SIZE,
+                data.length - HEADER_SIZE));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode stored String.
+     *
+     * @param data
+     * @return
+     * @throws java.io.IOException
+     */
+    static String decodeString(byte[] data) throws IOException {
+        byte[] decoded = decode(data);
+        return decoded == null ? null : new String(decoded, "UTF-8");
+    }
+
+    /**
+     * Wrap stream of stored value, so it returns decoded data.
+     *
+     * @param in
+     * @return
+     * @throws java.io.IOException
+     */
+    static InputStream decodingStream(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int read = 0;
+        int len;
+        while (read < HEADER_SIZE && (len = pushback.read(header, read, HEADER_SIZE - read)) > 0) {
+            read += len;
+        }
+        if (read < HEADER_SIZE || !hasHeader(header)) {
+            pushback.unread(header, 0, read);
+            return pushback;
+        }
+        if (header[2] == STORED) {
+            return pushback;
+        }
+        return codec.decompress(pushback);
+    }
+
+    private static boolean hasHeader(byte[] data) {
+        return data.length >= HEADER_SIZE && data[0] == MAGIC_0 && data[1] == MAGIC_1
+                && (data[2] == STORED || data[2] == COMPRESSED);
+    }
+}
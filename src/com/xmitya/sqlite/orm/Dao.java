@@ -1,20 +1,28 @@
 package com.xmitya.sqlite.orm;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import com.xmitya.sqlite.SQLiteHelper;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 /**
  * Lite DAO for Android SQLite. All tables annotated with {@link SQLiteTable}
@@ -25,10 +33,25 @@ import android.database.sqlite.SQLiteDatabase;
  */
 public class Dao<T> {
 
+    /**
+     * Rows committed per transaction by {@link #importFrom(InputStream, DataFormat, boolean)}.
+     */
+    public static final int IMPORT_BATCH_SIZE = 10000;
+
     private SQLiteDatabase database;
     private String tableName;
     private Class<T> clazz;
     private String idField;
+    private EntityMapping mapping;
+    private Constructor<T> constructor;
+    private QueryPlanDiagnostics diagnostics;
+    private String allColumns;
+    private String bulkColumns;
+    private boolean loadBlobs = true;
+    private boolean fullText;
+    private ChangeNotifier notifier = new ChangeNotifier();
+    private Set<String> textNumberColumns;
+    private String chunkTable;
 
     /**
      * Creates new DAO instance. Before using table should be created.
@@ -40,29 +63,44 @@ public class Dao<T> {
     public Dao(SQLiteDatabase database, Class<T> clazz) {
         this.database = database;
         this.clazz = clazz;
-        SQLiteTable tableNameAn = clazz.getAnnotation(SQLiteTable.class);
-        if (tableNameAn == null) {
-            throw new IllegalArgumentException(String.format(
-                    "Class %s not annotated with SQLiteTable annotation",
-                    clazz.getName()));
+        mapping = EntityMapping.get(clazz);
+        tableName = mapping.getTableName();
+        idField = mapping.getId().getName();
+        findSelectColumns();
+        fullText = !SQLiteHelper.getFullTextColumns(clazz).isEmpty();
+        if (SQLiteHelper.hasBlobColumns(clazz)) {
+            chunkTable = SQLiteHelper.getChunkTableName(tableName);
         }
-        tableName = tableNameAn.tableName();
-        findIdFieldName();
     }
 
-    private void findIdFieldName() {
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
-            if (fieldAn == null)
+    /**
+     * Prepare column lists for SELECT. {@link LazyBlob} columns are never
+     * selected, <code>byte[]</code> columns are skipped in bulk loads if
+     * {@link #setLoadBlobs(boolean)} is false.
+     */
+    private void findSelectColumns() {
+        StringBuilder all = new StringBuilder();
+        StringBuilder bulk = new StringBuilder();
+        boolean lazy = false;
+        boolean blobs = false;
+        for (EntityMapping.Column column : mapping.getColumns()) {
+            if (column.getType() == LazyBlob.class) {
+                lazy = true;
+                continue;
+            }
+            all.append(column.getName()).append(',');
+            if (column.getType() == byte[].class) {
+                blobs = true;
                 continue;
-            if (fieldAn.id()) {
-                idField = fieldAn.columnName();
-                return;
             }
+            bulk.append(column.getName()).append(',');
+        }
+        all.deleteCharAt(all.length() - 1);
+        allColumns = lazy ? all.toString() : "*";
+        if (bulk.length() > 0) {
+            bulk.deleteCharAt(bulk.length() - 1);
         }
-        throw new IllegalStateException(
-                "No ID field found. One field should be marked as id.");
+        bulkColumns = lazy || blobs ? bulk.toString() : "*";
     }
 
     /**
@@ -81,11 +119,293 @@ public class Dao<T> {
         return database.isOpen();
     }
 
+    /**
+     * Set diagnostics which will collect query plans for all statements of
+     * this DAO. Pass null for disable diagnostics.
+     *
+     * @param diagnostics
+     */
+    public void setQueryPlanDiagnostics(QueryPlanDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public QueryPlanDiagnostics getQueryPlanDiagnostics() {
+        return diagnostics;
+    }
+
+    private Cursor query(String sql, String[] args) {
+        if (diagnostics != null) {
+            diagnostics.capture(database, tableName, sql, args);
+        }
+        return database.rawQuery(sql, args);
+    }
+
+    private void execute(String sql, Object[] args) {
+        if (diagnostics != null) {
+            diagnostics.capture(database, tableName, sql, args);
+        }
+        database.execSQL(sql, args);
+    }
+
+    private SQLiteStatement compile(String sql) {
+        if (diagnostics != null) {
+            diagnostics.capture(database, tableName, sql, null);
+        }
+        return database.compileStatement(sql);
+    }
+
+    private static void bind(SQLiteStatement statement, Object[] args) {
+        statement.clearBindings();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof byte[]) {
+                statement.bindBlob(i + 1, (byte[]) args[i]);
+            } else if (args[i] instanceof Long) {
+                statement.bindLong(i + 1, (Long) args[i]);
+            } else {
+                statement.bindString(i + 1, args[i].toString());
+            }
+        }
+    }
+
+    /**
+     * Shows if numbers of column should be cast for comparison. Tables
+     * created before numeric columns got declared type hold numbers as text,
+     * columns with numeric affinity are compared as is, so their indexes
+     * are used.
+     *
+     * @param column
+     * @return
+     */
+    private boolean isTextNumber(String column) {
+        if (!mapping.getColumn(column).isNumeric()) {
+            return false;
+        }
+        if (textNumberColumns == null) {
+            Cursor cursor = null;
+            try {
+                cursor = database.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+                if (!cursor.moveToFirst()) {
+                    // table doesn't exist yet, check next time
+                    return false;
+                }
+                int nameColumn = cursor.getColumnIndex("name");
+                int typeColumn = cursor.getColumnIndex("type");
+                Set<String> columns = new HashSet<String>();
+                while (!cursor.isAfterLast()) {
+                    if (!hasNumericAffinity(cursor.getString(typeColumn))) {
+                        columns.add(cursor.getString(nameColumn).toLowerCase());
+                    }
+                    cursor.moveToNext();
+                }
+                textNumberColumns = columns;
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        return textNumberColumns.contains(column.toLowerCase());
+    }
+
+    /**
+     * Affinity rules of SQLite for declared column type.
+     */
+    private static boolean hasNumericAffinity(String type) {
+        if (type == null || type.length() == 0) {
+            return false;
+        }
+        type = type.toUpperCase();
+        return type.contains("INT") || !(type.contains("CHAR") || type.contains("CLOB")
+                || type.contains("TEXT") || type.contains("BLOB"));
+    }
+
+    /**
+     * Share notifier with other DAOs, so their observers receive changes made
+     * through this DAO.
+     *
+     * @param notifier
+     */
+    void setChangeNotifier(ChangeNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    /**
+     * Begin transaction. Changes made until {@link #endTransaction()} are
+     * delivered to observers with single notification after commit.
+     */
+    public void beginTransaction() {
+        database.beginTransaction();
+        notifier.begin();
+    }
+
+    /**
+     * Mark current transaction as successful, it will be committed on
+     * {@link #endTransaction()}.
+     */
+    public void setTransactionSuccessful() {
+        database.setTransactionSuccessful();
+        notifier.setSuccessful();
+    }
+
+    /**
+     * End transaction. Commits it if it was marked successful, otherwise
+     * rolls back. Observers are notified after outermost transaction commits,
+     * changes are dropped if commit fails.
+     */
+    public void endTransaction() {
+        boolean committed = false;
+        try {
+            database.endTransaction();
+            committed = true;
+        } finally {
+            notifier.end(committed);
+        }
+    }
+
+    /**
+     * Register observer which is notified after every committed write to
+     * this table made through DAO of the same {@link DaoFactory}.
+     * Writes made in transactions started directly on
+     * {@link android.database.sqlite.SQLiteDatabase} are reported immediately,
+     * use {@link #beginTransaction()} for coalesced notifications.
+     *
+     * @param observer
+     */
+    public void registerObserver(ChangeObserver observer) {
+        notifier.register(tableName, observer);
+    }
+
+    public void unregisterObserver(ChangeObserver observer) {
+        notifier.unregister(tableName, observer);
+    }
+
+    /**
+     * Observe rows which satisfy WHERE clause. After every committed change
+     * observer receives only changed rows which satisfy query and ids of
+     * rows which were removed from result, so it doesn't need to reload
+     * whole query. If changed rows can't be selected, whole query result is
+     * delivered instead; if that fails too, observer gets
+     * {@link QueryObserver#onError(SQLException)} and whole result on next
+     * change.
+     *
+     * @param where    WHERE clause without WHERE keyword, may be null.
+     * @param args     arguments for placeholders, may be null.
+     * @param observer
+     * @return registered observer, pass it to {@link #unregisterObserver(ChangeObserver)}
+     * for stop observing.
+     */
+    public ChangeObserver observe(final String where, final String[] args,
+                                  final QueryObserver<T> observer) {
+        ChangeObserver changeObserver = new ChangeObserver() {
+            // previous change wasn't delivered, observer needs whole result
+            private boolean stale;
+
+            @Override
+            public void onChange(String tableName, Set<String> ids) {
+                List<T> changed = null;
+                Set<String> removed = null;
+                if (ids != null && !stale) {
+                    try {
+                        changed = selectChanged(where, args, ids);
+                        removed = new HashSet<String>(ids);
+                        for (T data : changed) {
+                            removed.remove(String.valueOf(getIdValue(data)));
+                        }
+                    } catch (Exception e) {
+                        changed = null;
+                        removed = null;
+                    }
+                }
+                if (changed == null) {
+                    try {
+                        changed = select(where, args);
+                    } catch (SQLException e) {
+                        stale = true;
+                        observer.onError(e);
+                        return;
+                    }
+                }
+                stale = false;
+                observer.onChange(changed, removed);
+            }
+        };
+        registerObserver(changeObserver);
+        return changeObserver;
+    }
+
+    /**
+     * Select rows with given ids which satisfy WHERE clause.
+     */
+    private List<T> selectChanged(String where, String[] args, Set<String> ids)
+            throws SQLException {
+        // stay below SQLite limit of 999 host parameters
+        final int batch = 500;
+        List<T> result = new ArrayList<T>();
+        List<String> idList = new ArrayList<String>(ids);
+        int argsLength = args == null ? 0 : args.length;
+        for (int from = 0; from < idList.size(); from += batch) {
+            List<String> part = idList.subList(from, Math.min(from + batch, idList.size()));
+            StringBuilder builder = new StringBuilder();
+            if (where != null) {
+                builder.append('(').append(where).append(") AND ");
+            }
+            builder.append(idField).append(" IN (");
+            for (int i = 0; i < part.size(); i++) {
+                builder.append(i == 0 ? "?" : ",?");
+            }
+            builder.append(')');
+            String[] selectArgs = new String[argsLength + part.size()];
+            if (argsLength > 0) {
+                System.arraycopy(args, 0, selectArgs, 0, argsLength);
+            }
+            for (int i = 0; i < part.size(); i++) {
+                selectArgs[argsLength + i] = part.get(i);
+            }
+            result.addAll(select(builder.toString(), selectArgs));
+        }
+        return result;
+    }
+
+    /**
+     * Report change of row written outside of regular insert, update and
+     * delete methods.
+     *
+     * @param id
+     */
+    void notifyChanged(Object id) {
+        notifier.changed(tableName, id == null ? null : id.toString());
+    }
+
+    /**
+     * Set false for skip <code>byte[]</code> columns in {@link #getAll()},
+     * {@link #select(String, String...)} and {@link #scan(Object, RowCallback)}.
+     * Such fields stay null, {@link #selectById(Object)} still loads them.
+     * Default is true.
+     *
+     * @param loadBlobs
+     */
+    public void setLoadBlobs(boolean loadBlobs) {
+        this.loadBlobs = loadBlobs;
+    }
+
+    public boolean isLoadBlobs() {
+        return loadBlobs;
+    }
+
+    private String bulkSelect() {
+        return "SELECT " + bulkColumns() + " FROM ";
+    }
+
+    private String bulkColumns() {
+        return loadBlobs ? allColumns : bulkColumns;
+    }
+
     /**
      * Drop table with all data.
      */
     public void dropTable() {
         SQLiteHelper.dropTable(database, clazz);
+        textNumberColumns = null;
     }
 
     /**
@@ -96,39 +416,201 @@ public class Dao<T> {
     }
 
     /**
-     * Insert object into table. If field is null it will be skipped.
+     * Insert object into table. If field is null it will be skipped. If id
+     * field is {@link SQLiteField#autoGenerate()} and not set (null or 0),
+     * generated id is set to entity.
+     *
+     * @param data
+     * @return rowid of inserted row.
+     * @throws java.sql.SQLException
+     */
+    public long insert(T data) throws SQLException {
+        return insert(data, null);
+    }
+
+    /**
+     * Insert all objects in single transaction. Generated ids are set to
+     * entities like in {@link #insert(Object)}.
      *
      * @param data
+     * @return rowids of inserted rows in order of collection.
      * @throws java.sql.SQLException
      */
-    public void insert(T data) throws SQLException {
+    public long[] insertAll(Collection<T> data) throws SQLException {
+        long[] rowIds = new long[data.size()];
+        // statements are the same for rows with the same set of null fields
+        Map<String, SQLiteStatement> statements = new HashMap<String, SQLiteStatement>();
+        beginTransaction();
+        try {
+            int i = 0;
+            for (T item : data) {
+                rowIds[i++] = insert(item, statements);
+            }
+            setTransactionSuccessful();
+        } finally {
+            for (SQLiteStatement statement : statements.values()) {
+                statement.close();
+            }
+            endTransaction();
+        }
+        return rowIds;
+    }
+
+    private long insert(T data, Map<String, SQLiteStatement> statements)
+            throws SQLException {
         StringBuilder builder = new StringBuilder("INSERT INTO ").append(
                 tableName).append(" (");
         StringBuilder values = new StringBuilder(" VALUES(");
-        Field[] fields = clazz.getDeclaredFields();
+        List<Object> args = new ArrayList<Object>();
+        Map<String, byte[]> chunks = new HashMap<String, byte[]>();
+        EntityMapping.Column idColumn = mapping.getId();
+        Object id;
+        boolean generate;
         try {
-            for (Field field : fields) {
-                SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
-                if (fieldAn == null)
+            id = getIdValue(data);
+            generate = idColumn.getAnnotation().autoGenerate()
+                    && (id == null || (id instanceof Number && ((Number) id).longValue() == 0));
+            for (EntityMapping.Column column : mapping.getColumns()) {
+                SQLiteField fieldAn = column.getAnnotation();
+                if (generate && column == idColumn) {
                     continue;
+                }
                 // get value
-                Object value = getValue(data, field);
+                Object value = getValue(data, column);
+                if (value instanceof LazyBlob) {
+                    value = ((LazyBlob) value).getBytes();
+                }
                 if (value != null) {
                     // check if exists date pattern for formatting date to string
                     value = formatDateIfNecessary(value, fieldAn);
-                    values.append("'").append(value.toString()).append("'")
-                            .append(',');
+                    value = compressIfNecessary(value, fieldAn);
+                    values.append("?,");
+                    args.add(toBlobArg(value, column, chunks, false));
                     builder.append(fieldAn.columnName()).append(',');
                 }
             }
-            builder.deleteCharAt(builder.length() - 1).append(")");
-            values.deleteCharAt(values.length() - 1);
-            values.append(");");
-            builder.append(values.toString());
+            if (args.isEmpty()) {
+                builder = new StringBuilder("INSERT INTO ").append(tableName)
+                        .append(" DEFAULT VALUES;");
+            } else {
+                builder.deleteCharAt(builder.length() - 1).append(")");
+                values.deleteCharAt(values.length() - 1);
+                values.append(");");
+                builder.append(values.toString());
+            }
         } catch (Exception e) {
             throw new SQLException("Error on insert " + e.getMessage());
         }
-        database.execSQL(builder.toString());
+        String sql = builder.toString();
+        SQLiteStatement statement = statements == null ? null : statements.get(sql);
+        if (statement == null) {
+            statement = compile(sql);
+            if (statements != null) {
+                statements.put(sql, statement);
+            }
+        }
+        long rowId;
+        if (!chunks.isEmpty()) {
+            database.beginTransaction();
+        }
+        try {
+            try {
+                bind(statement, args.toArray());
+                rowId = statement.executeInsert();
+            } finally {
+                if (statements == null) {
+                    statement.close();
+                }
+            }
+            if (rowId == -1) {
+                throw new SQLException("Error on insert into " + tableName);
+            }
+            if (generate) {
+                id = setGeneratedId(data, rowId);
+            }
+            for (Map.Entry<String, byte[]> chunk : chunks.entrySet()) {
+                writeBlobChunks(id, chunk.getKey(), chunk.getValue());
+            }
+            if (!chunks.isEmpty()) {
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            if (!chunks.isEmpty()) {
+                database.endTransaction();
+            }
+        }
+        notifyChanged(id);
+        return rowId;
+    }
+
+    /**
+     * Set rowid to id field converting it to field type.
+     *
+     * @return new id value.
+     */
+    private Object setGeneratedId(T data, long rowId) throws SQLException {
+        EntityMapping.Column column = mapping.getId();
+        Class<?> type = column.getType();
+        Object value;
+        if (type == int.class || type == Integer.class) {
+            value = (int) rowId;
+        } else if (type == long.class || type == Long.class) {
+            value = rowId;
+        } else if (type == String.class) {
+            value = String.valueOf(rowId);
+        } else {
+            return rowId;
+        }
+        try {
+            setField(data, column, value);
+        } catch (Exception e) {
+            throw new SQLException("Error on setting generated id " + e.getMessage());
+        }
+        return value;
+    }
+
+    /**
+     * Values are bound as strings, only <code>byte[]</code> bound as BLOB.
+     *
+     * @param value
+     * @return
+     */
+    private Object toBindArg(Object value) {
+        if (value instanceof byte[]) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Bind argument for column value. BLOB values larger than
+     * {@link BlobInputStream#CHUNK_SIZE} are put to <b>chunks</b> and column
+     * gets their length as INTEGER. If <b>replace</b> is true other BLOB
+     * values get null in <b>chunks</b>, so previous chunks are deleted.
+     *
+     * @param value
+     * @param column
+     * @param chunks  values to write to chunk table by column name.
+     * @param replace row may have chunks of previous value.
+     * @return
+     */
+    private Object toBlobArg(Object value, EntityMapping.Column column,
+                             Map<String, byte[]> chunks, boolean replace) {
+        if (!isBlob(column)) {
+            return toBindArg(value);
+        }
+        if (value instanceof byte[] && ((byte[]) value).length > BlobInputStream.CHUNK_SIZE) {
+            chunks.put(column.getName(), (byte[]) value);
+            return Long.valueOf(((byte[]) value).length);
+        }
+        if (replace) {
+            chunks.put(column.getName(), null);
+        }
+        return toBindArg(value);
+    }
+
+    private static boolean isBlob(EntityMapping.Column column) {
+        return column.getType() == byte[].class || column.getType() == LazyBlob.class;
     }
 
     private Object formatDateIfNecessary(Object value, SQLiteField fieldAn) {
@@ -143,21 +625,19 @@ public class Dao<T> {
         return value;
     }
 
-    private Object getValue(T data, Field field) throws SecurityException,
-            NoSuchMethodException, IllegalArgumentException,
-            IllegalAccessException, InvocationTargetException {
-        String getterName = field.getName();
-        char letter = getterName.charAt(0);
-        letter = Character.toUpperCase(letter);
-        getterName = getterName.substring(1);
-        if (isBoolean(field)) {
-            getterName = "is" + letter + getterName;
-        } else {
-            getterName = "get" + letter + getterName;
+    private Object compressIfNecessary(Object value, SQLiteField fieldAn)
+            throws IOException {
+        if (value == null || !fieldAn.compress()) {
+            return value;
         }
-        Method method = clazz.getMethod(getterName);
-        Object result = method.invoke(data);
-        if (isBoolean(field)) {
+        return ColumnCompression.encode(value, fieldAn.compressThreshold());
+    }
+
+    private Object getValue(T data, EntityMapping.Column column)
+            throws NoSuchMethodException, IllegalArgumentException,
+            IllegalAccessException, InvocationTargetException {
+        Object result = column.getGetter().invoke(data);
+        if (isBoolean(column.getType())) {
             Boolean bool = Boolean.valueOf(result.toString());
             Integer res = bool ? 1 : 0;
             result = res;
@@ -165,9 +645,8 @@ public class Dao<T> {
         return result;
     }
 
-    private boolean isBoolean(Field field) {
-        return field.getType() == boolean.class
-                || field.getType() == Boolean.class;
+    private boolean isBoolean(Class<?> type) {
+        return type == boolean.class || type == Boolean.class;
     }
 
     /**
@@ -180,16 +659,24 @@ public class Dao<T> {
     public void update(T data) throws SQLException {
         StringBuilder builder = new StringBuilder("UPDATE ").append(tableName)
                 .append(" SET ");
-        Field[] fields = clazz.getDeclaredFields();
+        List<Object> args = new ArrayList<Object>();
+        Map<String, byte[]> chunks = new HashMap<String, byte[]>();
         Object idValue = null;
         try {
-            for (Field field : fields) {
-                SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
-                if (fieldAn == null)
-                    continue;
+            for (EntityMapping.Column column : mapping.getColumns()) {
+                SQLiteField fieldAn = column.getAnnotation();
                 // get value
-                Object value = getValue(data, field);
+                Object value = getValue(data, column);
+                if (value instanceof LazyBlob) {
+                    LazyBlob blob = (LazyBlob) value;
+                    // not loaded blob wasn't changed
+                    if (!blob.isLoaded()) {
+                        continue;
+                    }
+                    value = blob.getBytes();
+                }
                 value = formatDateIfNecessary(value, fieldAn);
+                value = compressIfNecessary(value, fieldAn);
                 // save id for WHERE statement
                 if (fieldAn.id()) {
                     idValue = value;
@@ -197,17 +684,30 @@ public class Dao<T> {
                 if (value == null) {
                     value = "";
                 }
-                builder.append(fieldAn.columnName()).append("='")
-                        .append(value.toString()).append("',");
-
+                builder.append(fieldAn.columnName()).append("=?,");
+                args.add(toBlobArg(value, column, chunks, true));
             }
             builder.deleteCharAt(builder.length() - 1);
-            builder.append(" WHERE ").append(idField).append("='")
-                    .append(idValue).append("';");
+            builder.append(" WHERE ").append(idField).append("=?;");
+            args.add(String.valueOf(idValue));
         } catch (Exception e) {
             throw new SQLException("Error on update " + e.getMessage());
         }
-        database.execSQL(builder.toString());
+        if (chunks.isEmpty()) {
+            execute(builder.toString(), args.toArray());
+        } else {
+            database.beginTransaction();
+            try {
+                execute(builder.toString(), args.toArray());
+                for (Map.Entry<String, byte[]> chunk : chunks.entrySet()) {
+                    writeBlobChunks(idValue, chunk.getKey(), chunk.getValue());
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+        notifyChanged(idValue);
     }
 
     /**
@@ -218,18 +718,19 @@ public class Dao<T> {
      * @throws java.sql.SQLException
      */
     public T selectById(Object id) throws SQLException {
-        StringBuilder builder = new StringBuilder("SELECT * FROM ")
+        StringBuilder builder = new StringBuilder("SELECT ")
+                .append(allColumns).append(" FROM ")
                 .append(tableName).append(" WHERE ").append(idField)
-                .append("=").append("'").append(id.toString()).append("'");
+                .append("=?");
         Cursor cursor = null;
         T data = null;
         try {
-            cursor = database.rawQuery(builder.toString(), new String[]{});
+            cursor = query(builder.toString(), new String[]{id.toString()});
             cursor.moveToFirst();
             if (cursor.isAfterLast()) {
                 return null;
             }
-            data = cursorToObject(cursor);
+            data = cursorToObject(cursor, mapping.columnIndexes(cursor));
         } catch (Exception e) {
             e.printStackTrace();
             throw new SQLException("Error on select by ID " + e.getMessage());
@@ -240,77 +741,104 @@ public class Dao<T> {
         return data;
     }
 
-    private T cursorToObject(Cursor cursor) throws SecurityException,
+    private T cursorToObject(Cursor cursor, int[] indexes) throws SecurityException,
             NoSuchMethodException, IllegalArgumentException,
             InstantiationException, IllegalAccessException,
-            InvocationTargetException, ParseException {
-        Field[] fields = clazz.getDeclaredFields();
-        Constructor<T> constructor = clazz.getConstructor();
+            InvocationTargetException, ParseException, IOException, SQLException {
+        if (constructor == null) {
+            constructor = clazz.getConstructor();
+        }
         T data = constructor.newInstance();
-        for (int i = 0, col = 0, l = fields.length; i < l; i++) {
-            SQLiteField fieldAn = fields[i].getAnnotation(SQLiteField.class);
-            if (fieldAn == null) {
+        fillObject(cursor, indexes, data);
+        return data;
+    }
+
+    /**
+     * Set values of current cursor row to entity fields. Columns are found by
+     * name, fields which columns are absent in cursor stay untouched. Fields
+     * are set directly, not through setters.
+     *
+     * @param cursor
+     * @param indexes column indexes from {@link EntityMapping#columnIndexes(Cursor)}.
+     * @param data
+     */
+    private void fillObject(Cursor cursor, int[] indexes, T data) throws
+            NoSuchMethodException, IllegalArgumentException,
+            IllegalAccessException, InvocationTargetException, ParseException,
+            IOException, SQLException {
+        List<EntityMapping.Column> columns = mapping.getColumns();
+        for (int i = 0, l = indexes.length; i < l; i++) {
+            int col = indexes[i];
+            EntityMapping.Column column = columns.get(i);
+            Class<?> type = column.getType();
+            if (type == LazyBlob.class) {
+                int idCol = indexes[columns.indexOf(mapping.getId())];
+                String id = idCol < 0 ? null : cursor.getString(idCol);
+                LazyBlob value = id == null ? null : new LazyBlob(this, column.getName(), id);
+                setField(data, column, value);
                 continue;
             }
-            Class<?> type = fields[i].getType();
+            if (col < 0) {
+                continue;
+            }
+            SQLiteField fieldAn = column.getAnnotation();
             if (type == Integer.class) {
                 Integer value = cursor.getInt(col);
-                setField(data, fields[i], type, value);
+                setField(data, column, value);
             } else if (type == int.class) {
-                int value = cursor.getInt(col);
-                setField(data, fields[i], type, value);
+                column.getField().setInt(data, cursor.getInt(col));
             } else if (type == Long.class) {
                 Long value = cursor.getLong(col);
-                setField(data, fields[i], type, value);
+                setField(data, column, value);
             } else if (type == long.class) {
-                long value = cursor.getLong(col);
-                setField(data, fields[i], type, value);
+                column.getField().setLong(data, cursor.getLong(col));
             } else if (type == String.class) {
-                String value = cursor.getString(col);
-                setField(data, fields[i], type, value);
+                String value;
+                if (fieldAn.compress() && cursor.getType(col) == Cursor.FIELD_TYPE_BLOB) {
+                    value = ColumnCompression.decodeString(cursor.getBlob(col));
+                } else {
+                    value = cursor.getString(col);
+                }
+                setField(data, column, value);
             } else if (type == Date.class) {
                 if (!"".equals(fieldAn.datePattern()) && fieldAn.datePattern() != null) {
                     SimpleDateFormat format = new SimpleDateFormat(
                             fieldAn.datePattern());
                     String dateStr = cursor.getString(col);
-                    if (dateStr != null) {
-                        Date value = format.parse(dateStr);
-                        setField(data, fields[i], type, value);
-                    }
+                    Date value = dateStr != null ? format.parse(dateStr) : null;
+                    setField(data, column, value);
                 }
             } else if (type == byte[].class) {
-                byte[] value = cursor.getBlob(col);
-                setField(data, fields[i], type, value);
+                byte[] value;
+                if (cursor.getType(col) == Cursor.FIELD_TYPE_INTEGER) {
+                    // large value is kept in chunk table, column holds its length
+                    int idCol = indexes[columns.indexOf(mapping.getId())];
+                    value = idCol < 0 ? null : readChunks(cursor.getString(idCol),
+                            column.getName(), cursor.getInt(col));
+                } else {
+                    value = cursor.getBlob(col);
+                }
+                if (fieldAn.compress()) {
+                    value = ColumnCompression.decode(value);
+                }
+                setField(data, column, value);
             } else if (type == boolean.class) {
-                boolean value = cursor.getInt(col) > 0;
-                setField(data, fields[i], type, value);
+                column.getField().setBoolean(data, cursor.getInt(col) > 0);
             } else if (type == Boolean.class) {
                 Boolean value = cursor.getInt(col) > 0;
-                setField(data, fields[i], type, value);
+                setField(data, column, value);
             }
-            col++;
         }
-        return data;
-    }
-
-    private Method getSetter(T data, Field field, Class<?> parameterType)
-            throws SecurityException, NoSuchMethodException {
-        String setterName = field.getName();
-        char letter = setterName.charAt(0);
-        letter = Character.toUpperCase(letter);
-        setterName = setterName.substring(1);
-        setterName = "set" + letter + setterName;
-        Method method = clazz.getMethod(setterName, parameterType);
-        return method;
     }
 
-
-    private void setField(T data, Field field, Class<?> clazz, Object value)
-            throws SecurityException, NoSuchMethodException,
-            IllegalArgumentException, IllegalAccessException,
-            InvocationTargetException {
-        Method method = getSetter(data, field, clazz);
-        method.invoke(data, value);
+    /**
+     * Set field directly, primitive fields are set with typed setters of
+     * {@link java.lang.reflect.Field} in {@link #fillObject(Cursor, int[], Object)}
+     * without boxing.
+     */
+    private void setField(T data, EntityMapping.Column column, Object value)
+            throws IllegalArgumentException, IllegalAccessException {
+        column.getField().set(data, value);
     }
 
     /**
@@ -321,20 +849,12 @@ public class Dao<T> {
      * @throws java.sql.SQLException
      */
     public void delete(T data) throws SQLException {
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
-            if (fieldAn == null)
-                continue;
-            if (fieldAn.id()) {
-                try {
-                    Object idValue = getValue(data, field);
-                    deleteById(idValue);
-                } catch (Exception e) {
-                    throw new SQLException("Error on deleting entry "
-                            + e.getMessage());
-                }
-            }
+        try {
+            Object idValue = getValue(data, mapping.getId());
+            deleteById(idValue);
+        } catch (Exception e) {
+            throw new SQLException("Error on deleting entry "
+                    + e.getMessage());
         }
     }
 
@@ -346,8 +866,9 @@ public class Dao<T> {
     public void deleteById(Object id) {
         StringBuilder builder = new StringBuilder("DELETE FROM ")
                 .append(tableName).append(" WHERE ").append(idField)
-                .append(" ='").append(id.toString()).append("';");
-        database.execSQL(builder.toString());
+                .append("=?;");
+        execute(builder.toString(), new Object[]{id.toString()});
+        notifyChanged(id);
     }
 
     /**
@@ -357,21 +878,56 @@ public class Dao<T> {
      * @throws java.sql.SQLException
      */
     public List<T> getAll() throws SQLException {
-        StringBuilder builder = new StringBuilder("SELECT * FROM ")
+        return select(null);
+    }
+
+    /**
+     * Get all values which satisfy WHERE clause.
+     *
+     * @param where WHERE clause without WHERE keyword, may contain
+     *              <code>?</code> placeholders. Null returns all values.
+     * @param args  arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public List<T> select(String where, String... args) throws SQLException {
+        return selectOrdered(where, args, null);
+    }
+
+    /**
+     * Get all values which satisfy WHERE clause in given order.
+     *
+     * @param where   WHERE clause without WHERE keyword, may be null.
+     * @param args    arguments for placeholders, may be null.
+     * @param orderBy ORDER BY clause without ORDER BY keywords, e.g.
+     *                <code>"date DESC"</code>. Null keeps table order.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public List<T> selectOrdered(String where, String[] args, String orderBy)
+            throws SQLException {
+        StringBuilder builder = new StringBuilder(bulkSelect())
                 .append(tableName);
+        if (where != null) {
+            builder.append(" WHERE ").append(where);
+        }
+        if (orderBy != null) {
+            builder.append(" ORDER BY ").append(orderBy);
+        }
         Cursor cursor = null;
         List<T> result = new ArrayList<T>();
         T data = null;
         try {
-            cursor = database.rawQuery(builder.toString(), new String[]{});
+            cursor = query(builder.toString(), args);
+            int[] indexes = mapping.columnIndexes(cursor);
             cursor.moveToFirst();
             while (!cursor.isAfterLast()) {
-                data = cursorToObject(cursor);
+                data = cursorToObject(cursor, indexes);
                 result.add(data);
                 cursor.moveToNext();
             }
         } catch (Exception e) {
-            throw new SQLException("Error on select by ID " + e.getMessage());
+            throw new SQLException("Error on select " + e.getMessage());
         } finally {
             if (cursor != null)
                 cursor.close();
@@ -379,56 +935,835 @@ public class Dao<T> {
         return result;
     }
 
-    private Object getIdValue(T data) throws SecurityException,
-            IllegalArgumentException, NoSuchMethodException,
-            IllegalAccessException, InvocationTargetException {
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
-            if (fieldAn == null)
-                continue;
-            if (fieldAn.id()) {
-                Object value = getValue(data, field);
-                return value;
-            }
-        }
-        return null;
-    }
-
     /**
-     * Try to find if row with such id exists, if yes try to update, if no -
-     * insert value.
+     * Full text search over fields annotated with {@link SQLiteFullText}.
+     * Results are ordered by number of matched terms, rows with more matches
+     * go first.
      *
-     * @param data
+     * @param query FTS MATCH expression, e.g. <code>"android sqlite"</code>
+     *              or <code>"title:orm*"</code>.
+     * @param limit maximal number of results.
+     * @return
      * @throws java.sql.SQLException
+     * @throws IllegalStateException if entity has no full text fields.
      */
-    public void insertOrUpdate(T data) throws SQLException {
+    public List<T> search(String query, int limit) throws SQLException {
+        // qualified, so columns named docid or rank don't clash with fts_match
+        StringBuilder columns = new StringBuilder();
+        for (String column : bulkColumns().split(",")) {
+            columns.append(tableName).append('.').append(column).append(',');
+        }
+        columns.deleteCharAt(columns.length() - 1);
+        StringBuilder builder = new StringBuilder("SELECT ").append(columns)
+                .append(" FROM ").append(tableName).append(" JOIN (")
+                .append(matchQuery()).append(") AS fts_match ON ").append(tableName)
+                .append(".rowid=fts_match.docid ORDER BY fts_match.rank DESC");
         Cursor cursor = null;
+        List<T> result = new ArrayList<T>();
         try {
-            Object id = getIdValue(data);
-            if (id == null) {
-                throw new SQLException("Id field is null");
-            }
-            StringBuilder builder = new StringBuilder("SELECT * FROM ")
-                    .append(tableName).append(" WHERE ").append(idField)
-                    .append("=?");
-            cursor = database.rawQuery(builder.toString(),
-                    new String[]{id.toString()});
+            cursor = query(builder.toString(), new String[]{query, String.valueOf(limit)});
+            int[] indexes = mapping.columnIndexes(cursor);
             cursor.moveToFirst();
-            boolean insert = cursor.isAfterLast();
-            if (insert) {
-                insert(data);
-            } else {
-                update(data);
+            while (!cursor.isAfterLast()) {
+                result.add(cursorToObject(cursor, indexes));
+                cursor.moveToNext();
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error on search " + e.getMessage());
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Full text search which returns only ids of found rows.
+     *
+     * @param query FTS MATCH expression.
+     * @param limit maximal number of results.
+     * @return ids as strings in order of {@link #search(String, int)}.
+     * @throws java.sql.SQLException
+     * @throws IllegalStateException if entity has no full text fields.
+     */
+    public List<String> searchIds(String query, int limit) throws SQLException {
+        StringBuilder builder = new StringBuilder("SELECT ").append(tableName)
+                .append('.').append(idField).append(" FROM ").append(tableName)
+                .append(" JOIN (").append(matchQuery()).append(") AS fts_match ON ")
+                .append(tableName).append(".rowid=fts_match.docid ORDER BY fts_match.rank DESC");
+        Cursor cursor = null;
+        List<String> result = new ArrayList<String>();
+        try {
+            cursor = query(builder.toString(), new String[]{query, String.valueOf(limit)});
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                result.add(cursor.getString(0));
+                cursor.moveToNext();
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error on search " + e.getMessage());
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Ranked MATCH over full text table. FTS4 has no built-in ranking
+     * function, rank is number of hits: <code>offsets()</code> holds four
+     * space separated integers per hit.
+     *
+     * @return
+     */
+    private String matchQuery() {
+        if (!fullText) {
+            throw new IllegalStateException(String.format(
+                    "Class %s has no fields annotated with SQLiteFullText",
+                    clazz.getName()));
+        }
+        String ftsTable = SQLiteHelper.getFullTextTableName(tableName);
+        return "SELECT docid, (length(o) - length(replace(o, ' ', '')) + 1) / 4 AS rank"
+                + " FROM (SELECT docid, offsets(" + ftsTable + ") AS o FROM " + ftsTable
+                + " WHERE " + ftsTable + " MATCH ?) ORDER BY rank DESC LIMIT ?";
+    }
+
+    /**
+     * Read all rows into single entity instance and pass it to callback. No
+     * entities are created, so scanning of large tables doesn't load garbage
+     * collector.
+     *
+     * @param row      entity instance which will be filled with values of every row.
+     * @param callback
+     * @return number of scanned rows.
+     * @throws java.sql.SQLException
+     */
+    public int scan(T row, RowCallback<T> callback) throws SQLException {
+        return scan(null, null, row, callback);
+    }
+
+    /**
+     * Read rows which satisfy WHERE clause into single entity instance and
+     * pass it to callback. Scanning stops when callback returns false.
+     *
+     * @param where    WHERE clause without WHERE keyword, may be null.
+     * @param args     arguments for placeholders, may be null.
+     * @param row      entity instance which will be filled with values of every row.
+     * @param callback
+     * @return number of scanned rows.
+     * @throws java.sql.SQLException
+     */
+    public int scan(String where, String[] args, T row, RowCallback<T> callback)
+            throws SQLException {
+        StringBuilder builder = new StringBuilder(bulkSelect())
+                .append(tableName);
+        if (where != null) {
+            builder.append(" WHERE ").append(where);
+        }
+        Cursor cursor = null;
+        int rows = 0;
+        try {
+            cursor = query(builder.toString(), args);
+            int[] indexes = mapping.columnIndexes(cursor);
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                fillObject(cursor, indexes, row);
+                rows++;
+                if (!callback.onRow(row)) {
+                    break;
+                }
+                cursor.moveToNext();
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error on scan " + e.getMessage());
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Value of id field of entity.
+     *
+     * @param data
+     * @return
+     * @throws java.sql.SQLException
+     */
+    Object getId(T data) throws SQLException {
+        try {
+            return getIdValue(data);
+        } catch (Exception e) {
+            throw new SQLException("Error on getting id " + e.getMessage());
+        }
+    }
+
+    private Object getIdValue(T data) throws IllegalArgumentException,
+            NoSuchMethodException, IllegalAccessException,
+            InvocationTargetException {
+        return getValue(data, mapping.getId());
+    }
+
+    /**
+     * Try to find if row with such id exists, if yes try to update, if no -
+     * insert value.
+     *
+     * @param data
+     * @throws java.sql.SQLException
+     */
+    public void insertOrUpdate(T data) throws SQLException {
+        try {
+            Object id = getIdValue(data);
+            if (id == null) {
+                throw new SQLException("Id field is null");
+            }
+            if (exists(id)) {
+                update(data);
+            } else {
+                insert(data);
             }
         } catch (Exception e) {
             e.printStackTrace();
             throw new SQLException("Error on insert or update "
                     + e.getMessage());
+        }
+    }
+
+    /**
+     * Shows if row with such id exists. Doesn't read row itself.
+     *
+     * @param id
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public boolean exists(Object id) throws SQLException {
+        StringBuilder builder = new StringBuilder("SELECT 1 FROM ")
+                .append(tableName).append(" WHERE ").append(idField)
+                .append("=? LIMIT 1");
+        Cursor cursor = null;
+        try {
+            cursor = query(builder.toString(), new String[]{id.toString()});
+            return cursor.moveToFirst();
+        } catch (Exception e) {
+            throw new SQLException("Error on exists " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Number of rows in table.
+     *
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public long count() throws SQLException {
+        return count(null);
+    }
+
+    /**
+     * Number of rows which satisfy WHERE clause.
+     *
+     * @param where WHERE clause without WHERE keyword, may contain
+     *              <code>?</code> placeholders. Null counts all rows.
+     * @param args  arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public long count(String where, String... args) throws SQLException {
+        StringBuilder builder = new StringBuilder("SELECT COUNT(*) FROM ")
+                .append(tableName);
+        if (where != null) {
+            builder.append(" WHERE ").append(where);
+        }
+        Cursor cursor = null;
+        try {
+            cursor = query(builder.toString(), args);
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } catch (Exception e) {
+            throw new SQLException("Error on count " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Minimal value of column, {@link Double#NaN} if table is empty.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public double min(String column) throws SQLException {
+        return aggregate(Aggregate.MIN, column, null);
+    }
+
+    /**
+     * Maximal value of column, {@link Double#NaN} if table is empty.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public double max(String column) throws SQLException {
+        return aggregate(Aggregate.MAX, column, null);
+    }
+
+    /**
+     * Sum of column values, 0 if table is empty.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public double sum(String column) throws SQLException {
+        return aggregate(Aggregate.SUM, column, null);
+    }
+
+    /**
+     * Average of column values, {@link Double#NaN} if table is empty.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public double avg(String column) throws SQLException {
+        return aggregate(Aggregate.AVG, column, null);
+    }
+
+    /**
+     * Calculate aggregate function over rows which satisfy WHERE clause.
+     *
+     * @param function aggregate function.
+     * @param column   column name from {@link SQLiteField#columnName()}.
+     * @param where    WHERE clause without WHERE keyword, may be null.
+     * @param args     arguments for placeholders.
+     * @return value of function or {@link Double#NaN} if function returned NULL.
+     * @throws java.sql.SQLException
+     * @throws IllegalArgumentException if column isn't mapped in entity.
+     */
+    public double aggregate(Aggregate function, String column, String where,
+                            String... args) throws SQLException {
+        checkColumn(column);
+        StringBuilder builder = new StringBuilder("SELECT ")
+                .append(function.expression(column, isTextNumber(column)))
+                .append(" FROM ")
+                .append(tableName);
+        if (where != null) {
+            builder.append(" WHERE ").append(where);
+        }
+        Cursor cursor = null;
+        try {
+            cursor = query(builder.toString(), args);
+            cursor.moveToFirst();
+            return cursor.isNull(0) ? Double.NaN : cursor.getDouble(0);
+        } catch (Exception e) {
+            throw new SQLException("Error on aggregate " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Calculate aggregate function for every group of rows with equal value
+     * of grouping column. Groups are ordered by grouping column.
+     *
+     * @param groupColumn column for GROUP BY.
+     * @param function    aggregate function.
+     * @param column      aggregated column.
+     * @return
+     * @throws java.sql.SQLException
+     * @throws IllegalArgumentException if column isn't mapped in entity.
+     */
+    public List<GroupAggregate> groupBy(String groupColumn, Aggregate function,
+                                        String column) throws SQLException {
+        checkColumn(groupColumn);
+        checkColumn(column);
+        String group = isTextNumber(groupColumn)
+                ? Aggregate.numeric(groupColumn) : groupColumn;
+        StringBuilder builder = new StringBuilder("SELECT ")
+                .append(group).append(", COUNT(*), ")
+                .append(function.expression(column, isTextNumber(column)))
+                .append(" FROM ").append(tableName).append(" GROUP BY ").append(group)
+                .append(" ORDER BY ").append(group);
+        Cursor cursor = null;
+        List<GroupAggregate> result = new ArrayList<GroupAggregate>();
+        try {
+            cursor = query(builder.toString(), new String[]{});
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                double value = cursor.isNull(2) ? Double.NaN : cursor.getDouble(2);
+                result.add(new GroupAggregate(cursor.getString(0),
+                        cursor.getLong(1), value));
+                cursor.moveToNext();
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error on group by " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read values of INTEGER column of all rows into array.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public long[] readLongs(String column) throws SQLException {
+        return readLongs(column, null);
+    }
+
+    /**
+     * Read values of INTEGER column of rows which satisfy WHERE clause into
+     * array. NULL values are read as 0.
+     *
+     * @param column
+     * @param where  WHERE clause without WHERE keyword, may be null.
+     * @param args   arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public long[] readLongs(String column, String where, String... args)
+            throws SQLException {
+        ColumnBuffer.Longs buffer = new ColumnBuffer.Longs();
+        readColumns(new String[]{column}, new ColumnBuffer[]{buffer}, where, args);
+        return buffer.toArray();
+    }
+
+    /**
+     * Read values of INTEGER column of all rows into array.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public int[] readInts(String column) throws SQLException {
+        return readInts(column, null);
+    }
+
+    /**
+     * Read values of INTEGER column of rows which satisfy WHERE clause into
+     * array. NULL values are read as 0.
+     *
+     * @param column
+     * @param where  WHERE clause without WHERE keyword, may be null.
+     * @param args   arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public int[] readInts(String column, String where, String... args)
+            throws SQLException {
+        ColumnBuffer.Ints buffer = new ColumnBuffer.Ints();
+        readColumns(new String[]{column}, new ColumnBuffer[]{buffer}, where, args);
+        return buffer.toArray();
+    }
+
+    /**
+     * Read values of REAL column of all rows into array.
+     *
+     * @param column
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public double[] readDoubles(String column) throws SQLException {
+        return readDoubles(column, null);
+    }
+
+    /**
+     * Read values of REAL column of rows which satisfy WHERE clause into
+     * array. NULL values are read as 0.
+     *
+     * @param column
+     * @param where  WHERE clause without WHERE keyword, may be null.
+     * @param args   arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public double[] readDoubles(String column, String where, String... args)
+            throws SQLException {
+        ColumnBuffer.Doubles buffer = new ColumnBuffer.Doubles();
+        readColumns(new String[]{column}, new ColumnBuffer[]{buffer}, where, args);
+        return buffer.toArray();
+    }
+
+    /**
+     * Read several columns into primitive buffers, one buffer per column.
+     * Values are appended to buffers, so the same buffers may be used for
+     * several calls. Neither entities nor boxed values are created.
+     *
+     * @param columns column names from {@link SQLiteField#columnName()}.
+     * @param buffers buffers in the same order as columns.
+     * @param where   WHERE clause without WHERE keyword, may be null.
+     * @param args    arguments for placeholders.
+     * @return number of read rows.
+     * @throws java.sql.SQLException
+     * @throws IllegalArgumentException if column isn't mapped in entity or
+     *                                  number of buffers differs from number of columns.
+     */
+    public int readColumns(String[] columns, ColumnBuffer[] buffers, String where,
+                           String... args) throws SQLException {
+        if (columns.length == 0 || columns.length != buffers.length) {
+            throw new IllegalArgumentException(
+                    "Every column should have exactly one buffer");
+        }
+        StringBuilder builder = new StringBuilder("SELECT ");
+        for (String column : columns) {
+            checkColumn(column);
+            builder.append(column).append(',');
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(" FROM ").append(tableName);
+        if (where != null) {
+            builder.append(" WHERE ").append(where);
+        }
+        Cursor cursor = null;
+        int rows = 0;
+        try {
+            cursor = query(builder.toString(), args);
+            int count = cursor.getCount();
+            for (ColumnBuffer buffer : buffers) {
+                buffer.ensureCapacity(buffer.size() + count);
+            }
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i].read(cursor, i);
+                }
+                rows++;
+                cursor.moveToNext();
+            }
+        } catch (Exception e) {
+            throw new SQLException("Error on read columns " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Opens stream which reads BLOB column of the row by chunks. Values
+     * larger than {@link BlobInputStream#CHUNK_SIZE} are kept in chunk table
+     * by rows of that size, so every read loads only one chunk.
+     *
+     * @param id     id of row.
+     * @param column <code>byte[]</code> or {@link LazyBlob} column.
+     * @return stream or null if row doesn't exist or column is NULL.
+     * @throws java.sql.SQLException
+     */
+    public InputStream openBlobInputStream(Object id, String column) throws SQLException {
+        checkBlobColumn(column);
+        InputStream in = openRawBlobInputStream(id, column);
+        if (in != null && mapping.getColumn(column).getAnnotation().compress()) {
+            try {
+                in = ColumnCompression.decodingStream(in);
+            } catch (IOException e) {
+                throw new SQLException("Error on open blob " + e.getMessage());
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Stream of stored value of BLOB column, compressed values are not
+     * decoded.
+     *
+     * @return stream or null if row doesn't exist or column is NULL.
+     */
+    InputStream openRawBlobInputStream(Object id, String column) throws SQLException {
+        // typeof() and length() are taken from record header without loading value
+        // INTEGER value is length of value kept in chunk table
+        StringBuilder builder = new StringBuilder("SELECT typeof(").append(column)
+                .append("), CASE WHEN typeof(").append(column).append(")='integer' THEN ")
+                .append(column).append(" ELSE length(").append(column).append(") END FROM ")
+                .append(tableName).append(" WHERE ").append(idField).append("=?");
+        Cursor cursor = null;
+        try {
+            cursor = query(builder.toString(), new String[]{id.toString()});
+            if (!cursor.moveToFirst() || "null".equals(cursor.getString(0))) {
+                return null;
+            }
+            boolean chunked = "integer".equals(cursor.getString(0));
+            return new BlobInputStream(this, column, id, cursor.getLong(1), chunked);
+        } catch (Exception e) {
+            throw new SQLException("Error on open blob " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Opens stream which writes BLOB column of existing row by chunks.
+     * Every chunk is inserted to chunk table as separate staged row. On
+     * close previous value is replaced with staged chunks in single
+     * transaction, so readers see previous value until that, and stream
+     * which is never closed leaves it untouched. Values which fit single
+     * chunk are stored in row. Data of compressed column is compressed on
+     * the fly. Only one stream should write the same column of row at a time,
+     * opening stream discards chunks staged by abandoned ones.
+     *
+     * @param id     id of row.
+     * @param column <code>byte[]</code> or {@link LazyBlob} column.
+     * @return
+     * @throws java.sql.SQLException if row doesn't exist.
+     */
+    public OutputStream openBlobOutputStream(Object id, String column) throws SQLException {
+        checkBlobColumn(column);
+        if (!exists(id)) {
+            throw new SQLException("Error on open blob, no row with id " + id);
+        }
+        // chunks of abandoned streams
+        execute("DELETE FROM " + chunkTable + " WHERE owner=? AND substr(col, 1, ?)=?;",
+                new Object[]{id.toString(), Long.valueOf(stagingPrefix(column).length()),
+                        stagingPrefix(column)});
+        OutputStream out = new BlobOutputStream(this, column, id,
+                stagingPrefix(column) + UUID.randomUUID());
+        if (mapping.getColumn(column).getAnnotation().compress()) {
+            try {
+                out = ColumnCompression.compressingStream(out);
+            } catch (IOException e) {
+                throw new SQLException("Error on open blob " + e.getMessage());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Writes all rows of table to stream in {@link DataFormat#BINARY} format.
+     *
+     * @param out stream, flushed but not closed.
+     * @return number of exported rows.
+     * @throws java.sql.SQLException
+     */
+    public long exportTo(OutputStream out) throws SQLException {
+        return exportTo(out, DataFormat.BINARY);
+    }
+
+    /**
+     * Writes mapped columns of all rows to stream row by row. Stored values
+     * are written as is, so export of compressed columns stays compressed.
+     * BLOB values larger than {@link BlobInputStream#CHUNK_SIZE} are read by
+     * chunks.
+     *
+     * @param out    stream, flushed but not closed.
+     * @param format
+     * @return number of exported rows.
+     * @throws java.sql.SQLException
+     */
+    public long exportTo(OutputStream out, DataFormat format) throws SQLException {
+        try {
+            return new TableTransfer(this, database, mapping).export(out, format);
+        } catch (Exception e) {
+            throw new SQLException("Error on export " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads rows exported by {@link #exportTo(OutputStream)}.
+     *
+     * @param in stream, not closed.
+     * @return number of imported rows.
+     * @throws java.sql.SQLException
+     * @see #importFrom(InputStream, DataFormat, boolean)
+     */
+    public long importFrom(InputStream in) throws SQLException {
+        return importFrom(in, DataFormat.BINARY, false);
+    }
+
+    /**
+     * Loads rows from stream into table row by row through single compiled
+     * statement. Rows are committed in transactions of
+     * {@link #IMPORT_BATCH_SIZE} rows, so on error rows of already committed
+     * batches stay in table. Observers are notified once after import.
+     * Stream with column which isn't mapped in entity is rejected.
+     *
+     * @param in           stream, not closed.
+     * @param format
+     * @param deferIndexes drop indexes of table before load and create them
+     *                     after it, which is faster for large imports.
+     * @return number of imported rows.
+     * @throws java.sql.SQLException
+     */
+    public long importFrom(InputStream in, DataFormat format, boolean deferIndexes)
+            throws SQLException {
+        try {
+            return new TableTransfer(this, database, mapping).importRows(in, format,
+                    IMPORT_BATCH_SIZE, deferIndexes);
+        } catch (Exception e) {
+            throw new SQLException("Error on import " + e.getMessage());
+        } finally {
+            notifyChanged(null);
+        }
+    }
+
+    /**
+     * Read part of BLOB value stored in row.
+     */
+    byte[] readBlobRange(Object id, String column, long offset, int length)
+            throws SQLException {
+        StringBuilder builder = new StringBuilder("SELECT substr(")
+                .append(column).append(", ?, ?) FROM ")
+                .append(tableName).append(" WHERE ").append(idField).append("=?");
+        Cursor cursor = null;
+        try {
+            cursor = query(builder.toString(), new String[]{
+                    String.valueOf(offset + 1), String.valueOf(length), id.toString()});
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return cursor.getBlob(0);
+        } catch (Exception e) {
+            throw new SQLException("Error on read blob " + e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Read chunk of BLOB value stored in chunk table.
+     *
+     * @return chunk or null if there is no chunk with such number.
+     */
+    byte[] readBlobChunk(Object id, String column, int seq) throws SQLException {
+        Cursor cursor = null;
+        try {
+            cursor = query("SELECT data FROM " + chunkTable + " WHERE owner=? AND col=? AND seq=?",
+                    new String[]{id.toString(), column, String.valueOf(seq)});
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return cursor.getBlob(0);
+        } catch (Exception e) {
+            throw new SQLException("Error on read blob " + e.getMessage());
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
     }
+
+    /**
+     * Read whole value stored in chunk table.
+     */
+    private byte[] readChunks(Object id, String column, int length) throws SQLException {
+        byte[] data = new byte[length];
+        int position = 0;
+        for (int seq = 0; position < length; seq++) {
+            byte[] chunk = readBlobChunk(id, column, seq);
+            if (chunk == null) {
+                throw new SQLException("Error on read blob, chunk " + seq + " is missing");
+            }
+            System.arraycopy(chunk, 0, data, position, chunk.length);
+            position += chunk.length;
+        }
+        return data;
+    }
+
+    /**
+     * Replace chunks of value with chunks of <b>data</b>.
+     *
+     * @param data value or null for only delete previous chunks.
+     */
+    void writeBlobChunks(Object id, String column, byte[] data) {
+        deleteBlobChunks(id, column);
+        if (data == null) {
+            return;
+        }
+        SQLiteStatement statement = compile("INSERT INTO " + chunkTable
+                + " (owner, col, seq, data) VALUES(?, ?, ?, ?);");
+        try {
+            for (int offset = 0, seq = 0; offset < data.length; offset += BlobInputStream.CHUNK_SIZE, seq++) {
+                byte[] chunk = new byte[Math.min(BlobInputStream.CHUNK_SIZE, data.length - offset)];
+                System.arraycopy(data, offset, chunk, 0, chunk.length);
+                bind(statement, new Object[]{id.toString(), column, Long.valueOf(seq), chunk});
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    void deleteBlobChunks(Object id, String column) {
+        execute("DELETE FROM " + chunkTable + " WHERE owner=? AND col=?;",
+                new Object[]{id.toString(), column});
+    }
+
+    void writeBlobChunk(Object id, String column, int seq, byte[] data)
+            throws SQLException {
+        try {
+            execute("INSERT INTO " + chunkTable + " (owner, col, seq, data) VALUES(?, ?, ?, ?);",
+                    new Object[]{id.toString(), column, Long.valueOf(seq), data});
+        } catch (Exception e) {
+            throw new SQLException("Error on write blob " + e.getMessage());
+        }
+    }
+
+    /**
+     * Value of <code>col</code> in chunk table for chunks written by
+     * {@link BlobOutputStream} before it is closed.
+     */
+    private static String stagingPrefix(String column) {
+        return column + "/staged/";
+    }
+
+    /**
+     * Replace value of column after writing by {@link BlobOutputStream} in
+     * single transaction: previous chunks are deleted, staged chunks get
+     * column name and column gets new value.
+     *
+     * @param staged <code>col</code> of staged chunks, null if value is stored in row.
+     * @param value  BLOB stored in row or length of value in chunk table.
+     */
+    void commitBlob(Object id, String column, String staged, Object value) throws SQLException {
+        StringBuilder builder = new StringBuilder("UPDATE ").append(tableName)
+                .append(" SET ").append(column).append("=? WHERE ")
+                .append(idField).append("=?;");
+        database.beginTransaction();
+        try {
+            deleteBlobChunks(id, column);
+            if (staged != null) {
+                execute("UPDATE " + chunkTable + " SET col=? WHERE owner=? AND col=?;",
+                        new Object[]{column, id.toString(), staged});
+            }
+            execute(builder.toString(), new Object[]{value, id.toString()});
+            database.setTransactionSuccessful();
+        } catch (Exception e) {
+            throw new SQLException("Error on write blob " + e.getMessage());
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private void checkBlobColumn(String column) {
+        checkColumn(column);
+        Class<?> type = mapping.getColumn(column).getType();
+        if (type != byte[].class && type != LazyBlob.class) {
+            throw new IllegalArgumentException(String.format(
+                    "Column %s is not a blob", column));
+        }
+    }
+
+    private void checkColumn(String column) {
+        if (mapping.getColumn(column) == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Column %s not mapped in %s", column, clazz.getName()));
+        }
+    }
 }
@@ -5,7 +5,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
@@ -19,7 +24,9 @@ import com.xmitya.sqlite.SQLiteHelper;
  * </pre>
  * <p/>
  * DaoFactory constructor creates SQLiteHelper instance and invokes
- * {@link com.xmitya.sqlite.SQLiteHelper#onCreate(android.database.sqlite.SQLiteDatabase)} method.
+ * {@link com.xmitya.sqlite.SQLiteHelper#ensureSchema(android.database.sqlite.SQLiteDatabase)}
+ * method, which executes DDL only if schema fingerprint stored in database
+ * differs from current one. Entity metadata is prepared in background threads.
  *
  * @author xmitya
  */
@@ -32,14 +39,55 @@ public class DaoFactory {
 
     private DaoFactory(Context context) {
         helper = new SQLiteHelper(context);
-        helper.onCreate(helper.getWritableDatabase());
-        helper.upgradeIfNeed(helper.getWritableDatabase());
+        helper.ensureSchema(helper.getWritableDatabase());
         createMaps();
+        Class<?>[] entities = SQLiteHelper.getEntities();
+        for (Class<?> clazz : entities) {
+            verifiedTables.add(clazz);
+        }
+        warmUpMappings(entities);
     }
 
     private void createMaps() {
         readerDatabases = new HashMap<Class<?>, Dao<?>>();
         writerDatabases = new HashMap<Class<?>, Dao<?>>();
+        verifiedTables = new HashSet<Class<?>>();
+        notifier = new ChangeNotifier();
+    }
+
+    /**
+     * Build reflection metadata of entities in parallel, so first
+     * {@link com.xmitya.sqlite.orm.Dao} creation doesn't pay for it.
+     *
+     * @param entities
+     */
+    private static void warmUpMappings(Class<?>[] entities) {
+        if (entities.length == 0) {
+            return;
+        }
+        int threads = Math.min(entities.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DaoFactory-warm-up");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        for (final Class<?> clazz : entities) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        EntityMapping.get(clazz);
+                    } catch (RuntimeException e) {
+                        // wrong mapping will be reported on Dao creation
+                    }
+                }
+            });
+        }
+        executor.shutdown();
     }
 
     private DaoFactory(Context context, File dbFile, int databaseVersion) throws IOException {
@@ -63,6 +111,14 @@ public class DaoFactory {
     private SQLiteHelper helper;
     private Map<Class<?>, Dao<?>> readerDatabases;
     private Map<Class<?>, Dao<?>> writerDatabases;
+    /**
+     * Entities which tables are known to exist, DDL isn't executed for them.
+     */
+    private Set<Class<?>> verifiedTables;
+    private SQLiteDatabase localDatabase;
+    private ChangeNotifier notifier;
+    private DatabaseMaintenance maintenance;
+    private QueryPlanDiagnostics diagnostics;
     private static DaoFactory instance;
 
     private static HashMap<String, DaoFactory> customInstances;
@@ -112,8 +168,63 @@ public class DaoFactory {
         return helper;
     }
 
-    public void clearDatabase() {
+    /**
+     * Enables collecting of query plans for all {@link com.xmitya.sqlite.orm.Dao}
+     * created by this factory, including already cached ones.
+     *
+     * @return diagnostics which collects plans.
+     */
+    public synchronized QueryPlanDiagnostics enableQueryPlanDiagnostics() {
+        if (diagnostics == null) {
+            diagnostics = new QueryPlanDiagnostics();
+        }
+        setDiagnostics(diagnostics);
+        return diagnostics;
+    }
+
+    /**
+     * Stops collecting of query plans. Already collected plans stay available
+     * in diagnostics returned by {@link #enableQueryPlanDiagnostics()}.
+     */
+    public synchronized void disableQueryPlanDiagnostics() {
+        setDiagnostics(null);
+        diagnostics = null;
+    }
+
+    private void setDiagnostics(QueryPlanDiagnostics diagnostics) {
+        for (Dao<?> dao : readerDatabases.values()) {
+            dao.setQueryPlanDiagnostics(diagnostics);
+        }
+        for (Dao<?> dao : writerDatabases.values()) {
+            dao.setQueryPlanDiagnostics(diagnostics);
+        }
+    }
+
+    /**
+     * Start periodic ANALYZE / <code>PRAGMA optimize</code> / incremental
+     * vacuum of factory database. Maintenance stops when database is closed.
+     *
+     * @param periodMillis
+     * @return maintenance task which may be configured.
+     * @throws IllegalStateException for custom factory.
+     */
+    public synchronized DatabaseMaintenance startMaintenance(long periodMillis) {
+        if (helper == null) {
+            throw new IllegalStateException("Maintenance is not supported for custom database");
+        }
+        if (maintenance == null) {
+            maintenance = new DatabaseMaintenance(helper);
+            maintenance.start(periodMillis);
+        }
+        return maintenance;
+    }
+
+    public synchronized void clearDatabase() {
         helper.onUpgrade(helper.getWritableDatabase(), 1, 2);
+        verifiedTables.clear();
+        for (Class<?> clazz : SQLiteHelper.getEntities()) {
+            verifiedTables.add(clazz);
+        }
     }
 
     /**
@@ -126,16 +237,16 @@ public class DaoFactory {
         @SuppressWarnings("unchecked")
         Dao<T> dao = (Dao<T>) readerDatabases.get(clazz);
         if (dao == null || !dao.isOpen()) {
+            ensureTable(clazz);
             SQLiteDatabase database;
             if (helper != null) {
-                database = helper.getWritableDatabase();
+                database = helper.getReadableDatabase();
             } else {
-                database = SQLiteDatabase.openDatabase(localDbFile.getAbsolutePath(),
-                        null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.CREATE_IF_NECESSARY);
+                database = getLocalDatabase();
             }
-            SQLiteHelper.createTableIfNotExists(database, clazz);
-            database.close();
-            dao = new Dao<T>(helper.getReadableDatabase(), clazz);
+            dao = new Dao<T>(database, clazz);
+            dao.setQueryPlanDiagnostics(diagnostics);
+            dao.setChangeNotifier(notifier);
             readerDatabases.put(clazz, dao);
         }
         return dao;
@@ -151,24 +262,61 @@ public class DaoFactory {
         @SuppressWarnings("unchecked")
         Dao<T> dao = (Dao<T>) writerDatabases.get(clazz);
         if (dao == null || !dao.isOpen()) {
+            ensureTable(clazz);
             SQLiteDatabase database;
             if (helper != null) {
                 database = helper.getWritableDatabase();
             } else {
-                database = SQLiteDatabase.openOrCreateDatabase(localDbFile, null);
+                database = getLocalDatabase();
             }
             dao = new Dao<T>(database, clazz);
-            SQLiteHelper.createTableIfNotExists(database, clazz);
+            dao.setQueryPlanDiagnostics(diagnostics);
+            dao.setChangeNotifier(notifier);
             writerDatabases.put(clazz, dao);
         }
         return dao;
     }
 
+    /**
+     * Creates table if it wasn't verified by this factory yet.
+     *
+     * @param clazz
+     */
+    private void ensureTable(Class<?> clazz) {
+        if (verifiedTables.contains(clazz)) {
+            return;
+        }
+        SQLiteDatabase database;
+        if (helper != null) {
+            database = helper.getWritableDatabase();
+        } else {
+            database = getLocalDatabase();
+        }
+        SQLiteHelper.createTableIfNotExists(database, clazz);
+        verifiedTables.add(clazz);
+    }
+
+    /**
+     * Single connection to custom SQLite file shared by all DAOs of this factory.
+     *
+     * @return
+     */
+    private SQLiteDatabase getLocalDatabase() {
+        if (localDatabase == null || !localDatabase.isOpen()) {
+            localDatabase = SQLiteDatabase.openOrCreateDatabase(localDbFile, null);
+            SQLiteHelper.applyTuning(localDatabase);
+        }
+        return localDatabase;
+    }
+
     /**
      * Close all open database connections and destroy {@link com.xmitya.sqlite.orm.DaoFactory} instance.
      */
     public synchronized static void close() throws IOException {
         if (instance != null) {
+            if (instance.maintenance != null) {
+                instance.maintenance.stop();
+            }
             instance.helper.close();
             instance = null;
             if (customInstances != null) {
@@ -187,6 +335,10 @@ public class DaoFactory {
      * @throws java.io.IOException
      */
     public void closeDatabase() throws IOException {
+        if (maintenance != null) {
+            maintenance.stop();
+            maintenance = null;
+        }
         if (helper != null) {
             helper.close();
         }
@@ -196,7 +348,11 @@ public class DaoFactory {
         for (Dao dao : readerDatabases.values()) {
             dao.close();
         }
-        if (localDbFile.exists()) {
+        if (localDatabase != null) {
+            localDatabase.close();
+            localDatabase = null;
+        }
+        if (localDbFile != null && localDbFile.exists()) {
             copyFile(localDbFile, dbFile);
             localDbFile.delete();
             File journalFile = new File(localDbFile.getAbsolutePath() + "-journal");
@@ -0,0 +1,28 @@
+package com.xmitya.sqlite.orm;
+
+/**
+ * Formats of {@link com.xmitya.sqlite.orm.Dao#exportTo(java.io.OutputStream, DataFormat)}
+ * and {@link com.xmitya.sqlite.orm.Dao#importFrom(java.io.InputStream, DataFormat, boolean)}.
+ * All formats keep stored values as is, including compressed columns.
+ *
+ * @author xmitya
+ */
+public enum DataFormat {
+
+    /**
+     * Compact binary format: header with column names, then every value
+     * with type tag. Large BLOB values are written by chunks.
+     */
+    BINARY,
+    /**
+     * CSV with header line. Text is always quoted, unquoted empty value is
+     * NULL, BLOB is written as <code>0x</code> followed by hex digits.
+     */
+    CSV,
+    /**
+     * JSON object per line. BLOB is written as object
+     * <code>{"$blob": "BASE64"}</code>, REAL with integral value as
+     * <code>{"$real": "5.0"}</code>, so it isn't imported as INTEGER.
+     */
+    JSON_LINES
+}
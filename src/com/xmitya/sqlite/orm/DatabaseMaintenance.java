@@ -0,0 +1,116 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Periodic database maintenance in background thread: <code>PRAGMA optimize</code>,
+ * optionally full <code>ANALYZE</code> and incremental vacuum. Started by
+ * {@link DaoFactory#startMaintenance(long)} or manually:
+ * <p><pre>
+ * DatabaseMaintenance maintenance = new DatabaseMaintenance(helper);
+ * maintenance.start(TimeUnit.HOURS.toMillis(6));
+ * </pre>
+ *
+ * @author xmitya
+ */
+public class DatabaseMaintenance {
+
+    private final SQLiteOpenHelper helper;
+    private boolean analyze;
+    private int incrementalVacuumPages;
+    private ScheduledExecutorService executor;
+
+    public DatabaseMaintenance(SQLiteOpenHelper helper) {
+        this.helper = helper;
+    }
+
+    public boolean isAnalyze() {
+        return analyze;
+    }
+
+    /**
+     * Run full ANALYZE in addition to <code>PRAGMA optimize</code>, which
+     * analyzes only tables which need it. Default is false.
+     *
+     * @param analyze
+     */
+    public void setAnalyze(boolean analyze) {
+        this.analyze = analyze;
+    }
+
+    public int getIncrementalVacuumPages() {
+        return incrementalVacuumPages;
+    }
+
+    /**
+     * Number of free pages returned to file system on every run, 0 disables
+     * vacuum. Works only if database is created with
+     * {@link DatabaseTuning#setAutoVacuum(String)} INCREMENTAL.
+     *
+     * @param incrementalVacuumPages
+     */
+    public void setIncrementalVacuumPages(int incrementalVacuumPages) {
+        this.incrementalVacuumPages = incrementalVacuumPages;
+    }
+
+    /**
+     * Start periodic maintenance, first run happens after one period.
+     *
+     * @param periodMillis
+     */
+    public synchronized void start(long periodMillis) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DatabaseMaintenance");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runOnce();
+                } catch (RuntimeException e) {
+                    // next run may succeed, e.g. if database was busy
+                    e.printStackTrace();
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop periodic maintenance.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Run maintenance in current thread.
+     */
+    public void runOnce() {
+        SQLiteDatabase database = helper.getWritableDatabase();
+        if (analyze) {
+            database.execSQL("ANALYZE;");
+        }
+        DatabaseTuning.pragma(database, "optimize");
+        if (incrementalVacuumPages > 0) {
+            DatabaseTuning.pragma(database, "incremental_vacuum(" + incrementalVacuumPages + ")");
+        }
+    }
+}
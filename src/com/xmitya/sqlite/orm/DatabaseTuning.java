@@ -0,0 +1,322 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Set of PRAGMAs applied to every database opened by
+ * {@link com.xmitya.sqlite.SQLiteHelper} and {@link DaoFactory}. Only
+ * assigned values are applied, null keeps SQLite default. Set it before
+ * creating factory:
+ * <p><pre>
+ * SQLiteHelper.setTuning(DatabaseTuning.throughput());
+ * Dao<Entity> dao = DaoFactory.getInstance(context).getWriterDao(Entity.class);
+ * </pre>
+ * <p/>
+ * <b>page_size</b> and <b>auto_vacuum</b> take effect only for new database
+ * or after VACUUM, for existing database they are reported as not applied.
+ * <p/>
+ * Most PRAGMAs are per connection, so WAL is switched on with
+ * <code>PRAGMA journal_mode</code> instead of
+ * {@link SQLiteDatabase#enableWriteAheadLogging()}: the latter makes Android
+ * open pooled read connections which would never get this tuning. Database
+ * stays on single connection, which serves both reads and writes.
+ *
+ * @author xmitya
+ */
+public class DatabaseTuning {
+
+    public static final String DURABLE = "durable";
+    public static final String THROUGHPUT = "throughput";
+    public static final String READ_MOSTLY = "read-mostly";
+
+    private Long mmapSize;
+    private Integer cacheSize;
+    private Integer pageSize;
+    private String synchronous;
+    private String journalMode;
+    private String tempStore;
+    private Integer busyTimeout;
+    private String autoVacuum;
+
+    /**
+     * Full fsync on every commit, WAL journal.
+     *
+     * @return
+     */
+    public static DatabaseTuning durable() {
+        DatabaseTuning tuning = new DatabaseTuning();
+        tuning.setJournalMode("WAL");
+        tuning.setSynchronous("FULL");
+        tuning.setBusyTimeout(5000);
+        return tuning;
+    }
+
+    /**
+     * WAL journal with relaxed sync: committed transaction may be lost on
+     * power failure, but database stays consistent. Memory mapped reads,
+     * bigger page cache and temporary tables in memory.
+     *
+     * @return
+     */
+    public static DatabaseTuning throughput() {
+        DatabaseTuning tuning = new DatabaseTuning();
+        tuning.setJournalMode("WAL");
+        tuning.setSynchronous("NORMAL");
+        tuning.setMmapSize(256L * 1024 * 1024);
+        // negative value is size in KiB
+        tuning.setCacheSize(-16 * 1024);
+        tuning.setTempStore("MEMORY");
+        tuning.setBusyTimeout(5000);
+        return tuning;
+    }
+
+    /**
+     * Like {@link #throughput()}, but with bigger page cache for databases
+     * which are mostly read.
+     *
+     * @return
+     */
+    public static DatabaseTuning readMostly() {
+        DatabaseTuning tuning = throughput();
+        tuning.setCacheSize(-32 * 1024);
+        return tuning;
+    }
+
+    /**
+     * Returns profile by name.
+     *
+     * @param name {@link #DURABLE}, {@link #THROUGHPUT} or {@link #READ_MOSTLY}.
+     * @return
+     * @throws IllegalArgumentException if profile is unknown.
+     */
+    public static DatabaseTuning forName(String name) {
+        if (DURABLE.equals(name)) {
+            return durable();
+        } else if (THROUGHPUT.equals(name)) {
+            return throughput();
+        } else if (READ_MOSTLY.equals(name)) {
+            return readMostly();
+        }
+        throw new IllegalArgumentException("Unknown tuning profile " + name);
+    }
+
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
+    /**
+     * Maximal number of bytes used for memory mapped I/O, 0 disables it.
+     *
+     * @param mmapSize
+     */
+    public void setMmapSize(Long mmapSize) {
+        this.mmapSize = mmapSize;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Page cache size in pages, or in KiB if negative.
+     *
+     * @param cacheSize
+     */
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * OFF, NORMAL, FULL or EXTRA.
+     *
+     * @param synchronous
+     */
+    public void setSynchronous(String synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    /**
+     * DELETE, TRUNCATE, PERSIST, MEMORY, WAL or OFF. WAL is enabled with
+     * PRAGMA, so Android keeps single connection and doesn't open pooled read
+     * connections.
+     *
+     * @param journalMode
+     */
+    public void setJournalMode(String journalMode) {
+        this.journalMode = journalMode;
+    }
+
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    /**
+     * DEFAULT, FILE or MEMORY.
+     *
+     * @param tempStore
+     */
+    public void setTempStore(String tempStore) {
+        this.tempStore = tempStore;
+    }
+
+    public Integer getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    /**
+     * Milliseconds to wait for lock held by other connection.
+     *
+     * @param busyTimeout
+     */
+    public void setBusyTimeout(Integer busyTimeout) {
+        this.busyTimeout = busyTimeout;
+    }
+
+    public String getAutoVacuum() {
+        return autoVacuum;
+    }
+
+    /**
+     * NONE, FULL or INCREMENTAL. INCREMENTAL is required for
+     * {@link DatabaseMaintenance#setIncrementalVacuumPages(int)}.
+     *
+     * @param autoVacuum
+     */
+    public void setAutoVacuum(String autoVacuum) {
+        this.autoVacuum = autoVacuum;
+    }
+
+    /**
+     * Apply PRAGMAs to connection and read them back.
+     *
+     * @param database
+     * @return descriptions of PRAGMAs which values differ from requested,
+     * empty list if all were applied.
+     */
+    public List<String> apply(SQLiteDatabase database) {
+        // auto_vacuum and page_size should go before anything writes database,
+        // switch to WAL writes database header
+        Map<String, String> pragmas = new LinkedHashMap<String, String>();
+        put(pragmas, "auto_vacuum", autoVacuum);
+        put(pragmas, "page_size", pageSize);
+        for (Map.Entry<String, String> entry : pragmas.entrySet()) {
+            pragma(database, entry.getKey() + "=" + entry.getValue());
+        }
+        if (journalMode != null) {
+            // pooled connections of enableWriteAheadLogging() wouldn't get tuning
+            if (database.isWriteAheadLoggingEnabled()) {
+                database.disableWriteAheadLogging();
+            }
+            pragma(database, "journal_mode=" + journalMode);
+        }
+        Map<String, String> connection = new LinkedHashMap<String, String>();
+        put(connection, "mmap_size", mmapSize);
+        put(connection, "cache_size", cacheSize);
+        put(connection, "synchronous", synchronous);
+        put(connection, "temp_store", tempStore);
+        put(connection, "busy_timeout", busyTimeout);
+        for (Map.Entry<String, String> entry : connection.entrySet()) {
+            pragma(database, entry.getKey() + "=" + entry.getValue());
+        }
+        pragmas.putAll(connection);
+        if (journalMode != null) {
+            pragmas.put("journal_mode", journalMode);
+        }
+        List<String> mismatches = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : pragmas.entrySet()) {
+            String actual = pragma(database, entry.getKey());
+            if (!normalize(entry.getKey(), entry.getValue()).equals(normalize(entry.getKey(), actual))) {
+                mismatches.add(entry.getKey() + ": requested " + entry.getValue()
+                        + ", actual " + actual);
+            }
+        }
+        return mismatches;
+    }
+
+    private static void put(Map<String, String> pragmas, String name, Object value) {
+        if (value != null) {
+            pragmas.put(name, value.toString());
+        }
+    }
+
+    /**
+     * Bring value to form returned by PRAGMA query: named constants of
+     * synchronous, temp_store and auto_vacuum are returned as numbers.
+     */
+    private static String normalize(String name, String value) {
+        if (value == null) {
+            return "";
+        }
+        String upper = value.toUpperCase(Locale.US);
+        String[] names = null;
+        if ("synchronous".equals(name)) {
+            names = new String[]{"OFF", "NORMAL", "FULL", "EXTRA"};
+        } else if ("temp_store".equals(name)) {
+            names = new String[]{"DEFAULT", "FILE", "MEMORY"};
+        } else if ("auto_vacuum".equals(name)) {
+            names = new String[]{"NONE", "FULL", "INCREMENTAL"};
+        }
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(upper)) {
+                    return String.valueOf(i);
+                }
+            }
+        }
+        return upper;
+    }
+
+    /**
+     * Execute PRAGMA statement. PRAGMAs may return rows, so they are executed
+     * as query.
+     *
+     * @param database
+     * @param pragma   PRAGMA without PRAGMA keyword.
+     * @return first column of first row or null.
+     */
+    static String pragma(SQLiteDatabase database, String pragma) {
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("PRAGMA " + pragma, null);
+            if (cursor.moveToFirst() && cursor.getColumnCount() > 0) {
+                return cursor.getString(0);
+            }
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseTuning{mmap_size=" + mmapSize + ", cache_size=" + cacheSize
+                + ", page_size=" + pageSize + ", synchronous=" + synchronous
+                + ", journal_mode=" + journalMode + ", temp_store=" + tempStore
+                + ", busy_timeout=" + busyTimeout + ", auto_vacuum=" + autoVacuum + "}";
+    }
+}
@@ -0,0 +1,197 @@
+package com.xmitya.sqlite.orm;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.xmitya.sqlite.SQLiteHelper;
+
+import android.database.Cursor;
+
+/**
+ * Cached reflection data of entity class: table name, annotated fields with
+ * their getters. Fields are made accessible and set directly. Created once
+ * per class and shared between all {@link com.xmitya.sqlite.orm.Dao}
+ * instances.
+ *
+ * @author xmitya
+ */
+class EntityMapping {
+
+    private static final Map<Class<?>, EntityMapping> mappings =
+            new HashMap<Class<?>, EntityMapping>();
+
+    private final String tableName;
+    private final List<Column> columns;
+    private final Column id;
+
+    /**
+     * Returns cached or creates new mapping for entity class.
+     *
+     * @param clazz
+     * @return
+     * @throws IllegalArgumentException if class not annotated with {@link SQLiteTable}
+     * @throws IllegalStateException    if class has no id field
+     */
+    static EntityMapping get(Class<?> clazz) {
+        synchronized (mappings) {
+            EntityMapping mapping = mappings.get(clazz);
+            if (mapping != null) {
+                return mapping;
+            }
+        }
+        EntityMapping mapping = new EntityMapping(clazz);
+        synchronized (mappings) {
+            EntityMapping existing = mappings.get(clazz);
+            if (existing != null) {
+                return existing;
+            }
+            mappings.put(clazz, mapping);
+        }
+        return mapping;
+    }
+
+    private EntityMapping(Class<?> clazz) {
+        SQLiteTable tableNameAn = clazz.getAnnotation(SQLiteTable.class);
+        if (tableNameAn == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Class %s not annotated with SQLiteTable annotation",
+                    clazz.getName()));
+        }
+        tableName = tableNameAn.tableName();
+        List<Column> columns = new ArrayList<Column>();
+        Column id = null;
+        for (Field field : clazz.getDeclaredFields()) {
+            SQLiteField fieldAn = field.getAnnotation(SQLiteField.class);
+            if (fieldAn == null)
+                continue;
+            Column column = new Column(clazz, field, fieldAn);
+            columns.add(column);
+            if (fieldAn.id() && id == null) {
+                id = column;
+            }
+        }
+        if (id == null) {
+            throw new IllegalStateException(
+                    "No ID field found. One field should be marked as id.");
+        }
+        this.columns = Collections.unmodifiableList(columns);
+        this.id = id;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Annotated fields in order of declaration.
+     *
+     * @return
+     */
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    Column getId() {
+        return id;
+    }
+
+    /**
+     * Find column by name.
+     *
+     * @param name
+     * @return column or null if not mapped.
+     */
+    Column getColumn(String name) {
+        for (Column column : columns) {
+            if (column.getName().equals(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find position of every mapped column in cursor by column name. Columns
+     * which are absent in cursor get index -1.
+     *
+     * @param cursor
+     * @return indexes in the same order as {@link #getColumns()}.
+     */
+    int[] columnIndexes(Cursor cursor) {
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = cursor.getColumnIndex(columns.get(i).getName());
+        }
+        return indexes;
+    }
+
+    /**
+     * Annotated field with cached accessors.
+     */
+    static class Column {
+
+        private final Field field;
+        private final SQLiteField annotation;
+        private final Method getter;
+
+        private Column(Class<?> clazz, Field field, SQLiteField annotation) {
+            this.field = field;
+            this.annotation = annotation;
+            // rows are filled through field without boxing and varargs of Method.invoke()
+            field.setAccessible(true);
+            String name = field.getName();
+            name = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            Class<?> type = field.getType();
+            boolean bool = type == boolean.class || type == Boolean.class;
+            getter = findMethod(clazz, (bool ? "is" : "get") + name);
+        }
+
+        private static Method findMethod(Class<?> clazz, String name,
+                                         Class<?>... parameterTypes) {
+            try {
+                return clazz.getMethod(name, parameterTypes);
+            } catch (NoSuchMethodException e) {
+                // reported on first access
+                return null;
+            }
+        }
+
+        String getName() {
+            return annotation.columnName();
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        SQLiteField getAnnotation() {
+            return annotation;
+        }
+
+        Class<?> getType() {
+            return field.getType();
+        }
+
+        /**
+         * Shows if field is stored as number.
+         *
+         * @return
+         */
+        boolean isNumeric() {
+            return !annotation.compress()
+                    && SQLiteHelper.getNumericAffinity(field.getType()) != null;
+        }
+
+        Method getGetter() throws NoSuchMethodException {
+            if (getter == null) {
+                throw new NoSuchMethodException("No getter for field " + field.getName());
+            }
+            return getter;
+        }
+    }
+}
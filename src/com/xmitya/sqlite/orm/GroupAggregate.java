@@ -0,0 +1,47 @@
+package com.xmitya.sqlite.orm;
+
+/**
+ * Single row of GROUP BY aggregate query: value of grouping column, number of
+ * rows in group and value of aggregate function.
+ *
+ * @author xmitya
+ */
+public class GroupAggregate {
+
+    private final String key;
+    private final long count;
+    private final double value;
+
+    GroupAggregate(String key, long count, double value) {
+        this.key = key;
+        this.count = count;
+        this.value = value;
+    }
+
+    /**
+     * Value of grouping column, may be null.
+     *
+     * @return
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Value of aggregate function, {@link Double#NaN} if function returned NULL.
+     *
+     * @return
+     */
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return key + ": " + value + " (" + count + ")";
+    }
+}
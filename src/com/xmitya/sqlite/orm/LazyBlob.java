@@ -0,0 +1,105 @@
+package com.xmitya.sqlite.orm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+/**
+ * BLOB field which is loaded only on access. Declare entity field with this
+ * type instead of <code>byte[]</code>:
+ * <p><pre>
+ * &#64;SQLiteField(columnName = "image")
+ * private LazyBlob image;
+ * </pre>
+ * <p/>
+ * {@link com.xmitya.sqlite.orm.Dao} never reads such columns in selects, it
+ * sets handle which reads column of the same row on first
+ * {@link #getBytes()} call, or streams it chunk by chunk with
+ * {@link #openInputStream()}. For writing create handle with
+ * {@link #LazyBlob(byte[])}. Handles which were never loaded are skipped by
+ * {@link com.xmitya.sqlite.orm.Dao#update(Object)}, so column stays unchanged.
+ *
+ * @author xmitya
+ */
+public class LazyBlob {
+
+    private final Dao<?> dao;
+    private final String column;
+    private final String id;
+    private byte[] data;
+    private boolean loaded;
+
+    /**
+     * Creates loaded handle with data for inserting or updating.
+     *
+     * @param data
+     */
+    public LazyBlob(byte[] data) {
+        this.dao = null;
+        this.column = null;
+        this.id = null;
+        this.data = data;
+        this.loaded = true;
+    }
+
+    LazyBlob(Dao<?> dao, String column, String id) {
+        this.dao = dao;
+        this.column = column;
+        this.id = id;
+    }
+
+    /**
+     * Shows if data is already in memory.
+     *
+     * @return
+     */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns column value, loads it on first call.
+     *
+     * @return data or null if column is NULL.
+     * @throws java.sql.SQLException
+     */
+    public synchronized byte[] getBytes() throws SQLException {
+        if (!loaded) {
+            InputStream in = dao.openBlobInputStream(id, column);
+            if (in != null) {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buf = new byte[BlobInputStream.CHUNK_SIZE];
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                    }
+                    in.close();
+                    data = out.toByteArray();
+                } catch (IOException e) {
+                    throw new SQLException("Error on loading blob " + e.getMessage());
+                }
+            }
+            loaded = true;
+        }
+        return data;
+    }
+
+    /**
+     * Opens stream for reading column value. If value isn't loaded yet it will
+     * be read from database chunk by chunk without loading it whole in memory.
+     *
+     * @return stream or null if column is NULL.
+     * @throws java.sql.SQLException
+     */
+    public InputStream openInputStream() throws SQLException {
+        synchronized (this) {
+            if (loaded) {
+                return data == null ? null : new ByteArrayInputStream(data);
+            }
+        }
+        return dao.openBlobInputStream(id, column);
+    }
+}
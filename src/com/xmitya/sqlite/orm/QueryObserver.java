@@ -0,0 +1,35 @@
+package com.xmitya.sqlite.orm;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Receives incremental updates of query registered with
+ * {@link com.xmitya.sqlite.orm.Dao#observe(String, String[], QueryObserver)}.
+ *
+ * @param <T>
+ * @author xmitya
+ */
+public interface QueryObserver<T> {
+
+    /**
+     * Invoked after changes of observed table are committed.
+     *
+     * @param changed    changed rows which satisfy query, or whole query result
+     *                   if <b>removedIds</b> is null.
+     * @param removedIds ids of changed rows which were deleted or don't satisfy
+     *                   query anymore. Null means that changed rows are unknown and
+     *                   <b>changed</b> contains whole query result.
+     */
+    void onChange(List<T> changed, Set<String> removedIds);
+
+    /**
+     * Invoked if query couldn't be executed after change, so observer misses
+     * this change. Next {@link #onChange(List, Set)} delivers whole query
+     * result.
+     *
+     * @param e
+     */
+    void onError(SQLException e);
+}
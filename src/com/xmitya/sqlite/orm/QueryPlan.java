@@ -0,0 +1,132 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of <code>EXPLAIN QUERY PLAN</code> for single statement issued by
+ * {@link com.xmitya.sqlite.orm.Dao}. Keeps plan lines as SQLite reports them
+ * and flags the most common problems: full table scans, temporary B-trees for
+ * ORDER BY / GROUP BY / DISTINCT and index lookups which are not covering.
+ *
+ * @author xmitya
+ */
+public class QueryPlan {
+
+    private final String statement;
+    private final List<String> details;
+    private boolean fullScan;
+    private boolean tempBTree;
+    private boolean notCovering;
+
+    /**
+     * @param statement
+     * @param details
+     * @param tables    lower case names of database tables. Scans of other
+     *                  names (subqueries, CTEs) are not full scans.
+     */
+    QueryPlan(String statement, List<String> details, Set<String> tables) {
+        this.statement = statement;
+        this.details = Collections.unmodifiableList(new ArrayList<String>(details));
+        for (String detail : details) {
+            String upper = detail.toUpperCase();
+            if (upper.startsWith("SCAN") && !upper.contains("INDEX")
+                    && !upper.contains("VIRTUAL TABLE")
+                    && tables.contains(scannedName(detail))) {
+                fullScan = true;
+            }
+            if (upper.contains("TEMP B-TREE")) {
+                tempBTree = true;
+            }
+            if (upper.contains("USING INDEX") && !upper.contains("COVERING INDEX")) {
+                notCovering = true;
+            }
+        }
+    }
+
+    /**
+     * Name in SCAN line, both <code>SCAN TABLE name</code> and newer
+     * <code>SCAN name</code> forms.
+     */
+    private static String scannedName(String detail) {
+        String[] words = detail.trim().split("\\s+");
+        int index = words.length > 2 && "TABLE".equalsIgnoreCase(words[1]) ? 2 : 1;
+        return index < words.length ? words[index].toLowerCase() : "";
+    }
+
+    /**
+     * SQL text of analysed statement. Statements are kept with <code>?</code>
+     * placeholders, so one plan describes all calls of the same operation.
+     *
+     * @return
+     */
+    public String getStatement() {
+        return statement;
+    }
+
+    /**
+     * Plan lines (<code>detail</code> column of <code>EXPLAIN QUERY PLAN</code>).
+     *
+     * @return
+     */
+    public List<String> getDetails() {
+        return details;
+    }
+
+    /**
+     * Shows if statement reads whole table without any index.
+     *
+     * @return
+     */
+    public boolean isFullScan() {
+        return fullScan;
+    }
+
+    /**
+     * Shows if SQLite builds temporary B-tree for sorting, grouping or DISTINCT.
+     *
+     * @return
+     */
+    public boolean isTempBTree() {
+        return tempBTree;
+    }
+
+    /**
+     * Shows if statement uses index, but has to look up table rows because
+     * index doesn't contain all requested columns.
+     *
+     * @return
+     */
+    public boolean isMissingCoveringIndex() {
+        return notCovering;
+    }
+
+    /**
+     * Shows if at least one problem was found in this plan.
+     *
+     * @return
+     */
+    public boolean hasWarnings() {
+        return fullScan || tempBTree || notCovering;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(statement);
+        if (fullScan) {
+            builder.append(" [FULL SCAN]");
+        }
+        if (tempBTree) {
+            builder.append(" [TEMP B-TREE]");
+        }
+        if (notCovering) {
+            builder.append(" [NOT COVERING INDEX]");
+        }
+        for (String detail : details) {
+            builder.append("\n    ").append(detail);
+        }
+        return builder.toString();
+    }
+}
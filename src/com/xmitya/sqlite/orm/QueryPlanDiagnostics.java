@@ -0,0 +1,153 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Collects <code>EXPLAIN QUERY PLAN</code> output for every distinct statement
+ * issued by {@link com.xmitya.sqlite.orm.Dao}. Every statement is analysed only
+ * once, so diagnostics may be left enabled in debug builds:
+ * <p><pre>
+ * QueryPlanDiagnostics diagnostics = DaoFactory.getInstance(context).enableQueryPlanDiagnostics();
+ * ...
+ * for (QueryPlan plan : diagnostics.getWarnings()) {
+ *     Log.w(TAG, plan.toString());
+ * }
+ * </pre>
+ *
+ * @author xmitya
+ */
+public class QueryPlanDiagnostics {
+
+    private final Map<String, Map<String, QueryPlan>> report =
+            new LinkedHashMap<String, Map<String, QueryPlan>>();
+
+    /**
+     * Explains statement if it wasn't explained yet for this table. INSERT
+     * statements are skipped, their plans don't contain any useful information.
+     *
+     * @param database  database which will execute statement.
+     * @param tableName table of entity which issues statement.
+     * @param sql       statement with <code>?</code> placeholders.
+     * @param args      arguments for placeholders, may be null.
+     */
+    public void capture(SQLiteDatabase database, String tableName, String sql, Object[] args) {
+        if (sql.regionMatches(true, 0, "INSERT", 0, 6)) {
+            return;
+        }
+        synchronized (report) {
+            Map<String, QueryPlan> plans = report.get(tableName);
+            if (plans != null && plans.containsKey(sql)) {
+                return;
+            }
+        }
+        QueryPlan plan = explain(database, sql, args);
+        synchronized (report) {
+            Map<String, QueryPlan> plans = report.get(tableName);
+            if (plans == null) {
+                plans = new LinkedHashMap<String, QueryPlan>();
+                report.put(tableName, plans);
+            }
+            plans.put(sql, plan);
+        }
+    }
+
+    /**
+     * Run <code>EXPLAIN QUERY PLAN</code> for statement.
+     *
+     * @param database
+     * @param sql
+     * @param args
+     * @return
+     */
+    public static QueryPlan explain(SQLiteDatabase database, String sql, Object[] args) {
+        String[] stringArgs = null;
+        if (args != null) {
+            stringArgs = new String[args.length];
+            for (int i = 0; i < args.length; i++) {
+                // plans don't depend on argument values, blobs and nulls replaced by empty string
+                stringArgs[i] = args[i] instanceof byte[] || args[i] == null ? "" : args[i].toString();
+            }
+        }
+        List<String> details = new ArrayList<String>();
+        Set<String> tables = new HashSet<String>();
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type='table'", null);
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                tables.add(cursor.getString(0).toLowerCase());
+                cursor.moveToNext();
+            }
+            cursor.close();
+            cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, stringArgs);
+            int detailColumn = cursor.getColumnIndex("detail");
+            if (detailColumn < 0) {
+                detailColumn = cursor.getColumnCount() - 1;
+            }
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                details.add(cursor.getString(detailColumn));
+                cursor.moveToNext();
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return new QueryPlan(sql, details, tables);
+    }
+
+    /**
+     * Returns copy of collected plans keyed by table name and statement.
+     *
+     * @return
+     */
+    public Map<String, Map<String, QueryPlan>> getReport() {
+        Map<String, Map<String, QueryPlan>> copy = new LinkedHashMap<String, Map<String, QueryPlan>>();
+        synchronized (report) {
+            for (Map.Entry<String, Map<String, QueryPlan>> entry : report.entrySet()) {
+                copy.put(entry.getKey(), Collections.unmodifiableMap(
+                        new LinkedHashMap<String, QueryPlan>(entry.getValue())));
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Returns only plans which have at least one problem.
+     *
+     * @return
+     * @see QueryPlan#hasWarnings()
+     */
+    public List<QueryPlan> getWarnings() {
+        List<QueryPlan> warnings = new ArrayList<QueryPlan>();
+        synchronized (report) {
+            for (Map<String, QueryPlan> plans : report.values()) {
+                for (QueryPlan plan : plans.values()) {
+                    if (plan.hasWarnings()) {
+                        warnings.add(plan);
+                    }
+                }
+            }
+        }
+        return warnings;
+    }
+
+    /**
+     * Remove all collected plans.
+     */
+    public void clear() {
+        synchronized (report) {
+            report.clear();
+        }
+    }
+}
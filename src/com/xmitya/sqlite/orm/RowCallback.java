@@ -0,0 +1,19 @@
+package com.xmitya.sqlite.orm;
+
+/**
+ * Callback for {@link com.xmitya.sqlite.orm.Dao#scan(Object, RowCallback)}.
+ *
+ * @param <T>
+ * @author xmitya
+ */
+public interface RowCallback<T> {
+
+    /**
+     * Invoked for every row. The same entity instance is passed for all rows,
+     * so it shouldn't be stored, copy values instead.
+     *
+     * @param row entity filled with values of current row.
+     * @return true for continue scanning, false for stop.
+     */
+    boolean onRow(T row);
+}
@@ -5,6 +5,10 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Maps field to table column. Values are written from getter of field and
+ * read into field directly, its setter is not called.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(value = {ElementType.FIELD})
 public @interface SQLiteField {
@@ -15,5 +19,26 @@ public @interface SQLiteField {
 
     boolean autoGenerate() default false;
 
+    /**
+     * For {@link #autoGenerate()} id: if true id column is declared with
+     * AUTOINCREMENT and ids are never reused. False declares plain INTEGER
+     * PRIMARY KEY which skips bookkeeping in sqlite_sequence table, but ids of
+     * deleted last rows may be reused.
+     */
+    boolean monotonic() default true;
+
     String datePattern() default "";
+
+    /**
+     * Store String or byte[] value compressed with
+     * {@link ColumnCompression#getCodec()}. Compressed columns can't be used
+     * in SQL conditions, aggregates and full text search.
+     */
+    boolean compress() default false;
+
+    /**
+     * Values shorter than threshold (chars for String, bytes for byte[]) are
+     * stored uncompressed.
+     */
+    int compressThreshold() default 512;
 }
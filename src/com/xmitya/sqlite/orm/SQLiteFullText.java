@@ -0,0 +1,20 @@
+package com.xmitya.sqlite.orm;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks String field annotated with {@link SQLiteField} as indexed for full
+ * text search. {@link com.xmitya.sqlite.SQLiteHelper} creates FTS4 table
+ * with external content for all such fields of entity and triggers which keep
+ * it in sync with entity table. Search with
+ * {@link com.xmitya.sqlite.orm.Dao#search(String, int)}. Index is keyed by
+ * rowid, so entity id should be integer or {@link SQLiteField#autoGenerate()}:
+ * INTEGER PRIMARY KEY keeps rowid stable across VACUUM.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = {ElementType.FIELD})
+public @interface SQLiteFullText {
+}
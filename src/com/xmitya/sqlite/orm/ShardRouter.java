@@ -0,0 +1,67 @@
+package com.xmitya.sqlite.orm;
+
+import java.util.Date;
+
+/**
+ * Chooses shard of {@link com.xmitya.sqlite.orm.ShardedDaoFactory} which owns
+ * row. Shard key is entity id.
+ *
+ * @author xmitya
+ */
+public interface ShardRouter {
+
+    /**
+     * Index of shard which owns row with such key.
+     *
+     * @param shardKey   entity id, never null.
+     * @param shardCount number of shards.
+     * @return index from 0 to shardCount - 1.
+     */
+    int route(Object shardKey, int shardCount);
+
+    /**
+     * Routes by hash of id string. String hash is specified by Java, so the
+     * same id goes to the same shard on every run.
+     */
+    class Hash implements ShardRouter {
+
+        @Override
+        public int route(Object shardKey, int shardCount) {
+            return (shardKey.toString().hashCode() & 0x7fffffff) % shardCount;
+        }
+    }
+
+    /**
+     * Routes time based ids (milliseconds as Number or String, or
+     * {@link java.util.Date}) by time bucket, so rows of the same period stay
+     * in one shard and periods are spread between shards round robin.
+     */
+    class TimeBucket implements ShardRouter {
+
+        private final long bucketMillis;
+
+        /**
+         * @param bucketMillis length of time bucket in milliseconds.
+         */
+        public TimeBucket(long bucketMillis) {
+            if (bucketMillis <= 0) {
+                throw new IllegalArgumentException("Bucket length should be positive");
+            }
+            this.bucketMillis = bucketMillis;
+        }
+
+        @Override
+        public int route(Object shardKey, int shardCount) {
+            long millis;
+            if (shardKey instanceof Date) {
+                millis = ((Date) shardKey).getTime();
+            } else if (shardKey instanceof Number) {
+                millis = ((Number) shardKey).longValue();
+            } else {
+                millis = Long.parseLong(shardKey.toString());
+            }
+            long bucket = millis / bucketMillis;
+            return (int) (((bucket % shardCount) + shardCount) % shardCount);
+        }
+    }
+}
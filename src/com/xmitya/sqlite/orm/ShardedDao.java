@@ -0,0 +1,250 @@
+package com.xmitya.sqlite.orm;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * DAO over several database files created by
+ * {@link com.xmitya.sqlite.orm.ShardedDaoFactory}. Writes and reads by id go
+ * only to shard which owns id, other reads are executed on all shards in
+ * parallel and merged.
+ *
+ * @param <T>
+ * @author xmitya
+ */
+public class ShardedDao<T> {
+
+    private final List<Dao<T>> shards;
+    private final ShardRouter router;
+    private final ExecutorService executor;
+
+    /**
+     * Operation executed on every shard.
+     */
+    private interface ShardTask<T, R> {
+        R run(Dao<T> dao) throws SQLException;
+    }
+
+    ShardedDao(List<Dao<T>> shards, ShardRouter router, ExecutorService executor) {
+        this.shards = shards;
+        this.router = router;
+        this.executor = executor;
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Returns DAO of shard which owns id.
+     *
+     * @param id
+     * @return
+     */
+    public Dao<T> getShard(Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Id is required for choosing shard");
+        }
+        return shards.get(router.route(id, shards.size()));
+    }
+
+    private Dao<T> getShardOf(T data) throws SQLException {
+        return getShard(shards.get(0).getId(data));
+    }
+
+    /**
+     * Insert object into owning shard. Id should be set before insert.
+     *
+     * @param data
+     * @return rowid of inserted row in owning shard.
+     * @throws java.sql.SQLException
+     */
+    public long insert(T data) throws SQLException {
+        return getShardOf(data).insert(data);
+    }
+
+    public void update(T data) throws SQLException {
+        getShardOf(data).update(data);
+    }
+
+    public void insertOrUpdate(T data) throws SQLException {
+        getShardOf(data).insertOrUpdate(data);
+    }
+
+    public void delete(T data) throws SQLException {
+        getShardOf(data).delete(data);
+    }
+
+    public void deleteById(Object id) {
+        getShard(id).deleteById(id);
+    }
+
+    public T selectById(Object id) throws SQLException {
+        return getShard(id).selectById(id);
+    }
+
+    public boolean exists(Object id) throws SQLException {
+        return getShard(id).exists(id);
+    }
+
+    /**
+     * Get all values from all shards. Order of values is undefined.
+     *
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public List<T> getAll() throws SQLException {
+        return select(null);
+    }
+
+    /**
+     * Get values which satisfy WHERE clause from all shards. Order of values
+     * is undefined.
+     *
+     * @param where WHERE clause without WHERE keyword, may be null.
+     * @param args  arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public List<T> select(final String where, final String... args) throws SQLException {
+        List<List<T>> results = fanOut(new ShardTask<T, List<T>>() {
+            @Override
+            public List<T> run(Dao<T> dao) throws SQLException {
+                return dao.select(where, args);
+            }
+        });
+        int size = 0;
+        for (List<T> result : results) {
+            size += result.size();
+        }
+        List<T> merged = new ArrayList<T>(size);
+        for (List<T> result : results) {
+            merged.addAll(result);
+        }
+        return merged;
+    }
+
+    /**
+     * Get values which satisfy WHERE clause from all shards in given order.
+     * Every shard sorts its rows, sorted results are merged.
+     *
+     * @param where      WHERE clause without WHERE keyword, may be null.
+     * @param args       arguments for placeholders, may be null.
+     * @param orderBy    ORDER BY clause for shard queries.
+     * @param comparator comparator which orders entities the same way as
+     *                   <b>orderBy</b>.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public List<T> selectOrdered(final String where, final String[] args, final String orderBy,
+                                 final Comparator<? super T> comparator) throws SQLException {
+        final List<List<T>> results = fanOut(new ShardTask<T, List<T>>() {
+            @Override
+            public List<T> run(Dao<T> dao) throws SQLException {
+                return dao.selectOrdered(where, args, orderBy);
+            }
+        });
+        // k-way merge, head of every shard result is kept in queue
+        PriorityQueue<int[]> heads = new PriorityQueue<int[]>(results.size(), new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return comparator.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1]));
+            }
+        });
+        int size = 0;
+        for (int i = 0; i < results.size(); i++) {
+            size += results.get(i).size();
+            if (!results.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<T> merged = new ArrayList<T>(size);
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> result = results.get(head[0]);
+            merged.add(result.get(head[1]));
+            if (++head[1] < result.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Number of rows in all shards.
+     *
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public long count() throws SQLException {
+        return count(null);
+    }
+
+    /**
+     * Number of rows which satisfy WHERE clause in all shards.
+     *
+     * @param where WHERE clause without WHERE keyword, may be null.
+     * @param args  arguments for placeholders.
+     * @return
+     * @throws java.sql.SQLException
+     */
+    public long count(final String where, final String... args) throws SQLException {
+        List<Long> counts = fanOut(new ShardTask<T, Long>() {
+            @Override
+            public Long run(Dao<T> dao) throws SQLException {
+                return dao.count(where, args);
+            }
+        });
+        long count = 0;
+        for (Long shardCount : counts) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Execute task on every shard in parallel.
+     *
+     * @param task
+     * @return results in order of shards.
+     * @throws java.sql.SQLException if task failed on any shard.
+     */
+    private <R> List<R> fanOut(final ShardTask<T, R> task) throws SQLException {
+        List<Future<R>> futures = new ArrayList<Future<R>>(shards.size());
+        for (final Dao<T> dao : shards) {
+            futures.add(executor.submit(new Callable<R>() {
+                @Override
+                public R call() throws Exception {
+                    return task.run(dao);
+                }
+            }));
+        }
+        List<R> results = new ArrayList<R>(shards.size());
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted on shard query");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Error on shard query " + cause);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,157 @@
+package com.xmitya.sqlite.orm;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+
+import com.xmitya.sqlite.SQLiteHelper;
+
+/**
+ * Factory which spreads entities between several SQLite files (shards), so
+ * writes to different shards don't wait for single database lock:
+ * <p><pre>
+ * ShardedDaoFactory factory = new ShardedDaoFactory(context, "events.db", 4, new ShardRouter.Hash());
+ * ShardedDao<Event> dao = factory.getDao(Event.class);
+ * </pre>
+ * <p/>
+ * Every shard is created with tables from {@link SQLiteHelper#getEntities()}
+ * and the same database version. Shard owning row is chosen by
+ * {@link ShardRouter} from entity id, so number of shards and router
+ * shouldn't change for existing files.
+ *
+ * @author xmitya
+ */
+public class ShardedDaoFactory {
+
+    private final SQLiteHelper[] helpers;
+    private final ShardRouter router;
+    private final ExecutorService executor;
+    private final Map<Class<?>, ShardedDao<?>> daos = new HashMap<Class<?>, ShardedDao<?>>();
+
+    /**
+     * Opens or creates shard files and verifies their schema in parallel.
+     *
+     * @param context
+     * @param databaseName name of database, shard files are named with
+     *                     {@link #getShardDatabaseName(String, int)}.
+     * @param shardCount   number of shards.
+     * @param router       router which chooses shard by entity id.
+     * @throws java.sql.SQLException if schema of any shard can't be created.
+     */
+    public ShardedDaoFactory(Context context, String databaseName, int shardCount,
+                             ShardRouter router) throws SQLException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count should be positive");
+        }
+        this.router = router;
+        helpers = new SQLiteHelper[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            helpers[i] = new SQLiteHelper(context, getShardDatabaseName(databaseName, i),
+                    SQLiteHelper.getDatabaseVersion());
+        }
+        executor = Executors.newFixedThreadPool(shardCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ShardedDaoFactory");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (final SQLiteHelper helper : helpers) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return helper.ensureSchema(helper.getWritableDatabase());
+                }
+            }));
+        }
+        try {
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted on shards creation");
+        } catch (ExecutionException e) {
+            throw new SQLException("Error on shards creation " + e.getCause());
+        }
+    }
+
+    /**
+     * Name of shard file, shard index is inserted before extension:
+     * <code>events.db</code> becomes <code>events.shard0.db</code>.
+     *
+     * @param databaseName
+     * @param shard
+     * @return
+     */
+    public static String getShardDatabaseName(String databaseName, int shard) {
+        int dot = databaseName.lastIndexOf('.');
+        if (dot <= 0) {
+            return databaseName + ".shard" + shard;
+        }
+        return databaseName.substring(0, dot) + ".shard" + shard + databaseName.substring(dot);
+    }
+
+    public int getShardCount() {
+        return helpers.length;
+    }
+
+    /**
+     * Returns cached or creates new {@link ShardedDao} for entity.
+     *
+     * @param clazz
+     * @return
+     * @throws IllegalArgumentException if id of entity is
+     *                                  {@link SQLiteField#autoGenerate()}: shard is
+     *                                  chosen by id before insert, and every shard
+     *                                  would generate overlapping ids.
+     */
+    public synchronized <T> ShardedDao<T> getDao(Class<T> clazz) {
+        @SuppressWarnings("unchecked")
+        ShardedDao<T> dao = (ShardedDao<T>) daos.get(clazz);
+        if (dao == null) {
+            if (EntityMapping.get(clazz).getId().getAnnotation().autoGenerate()) {
+                throw new IllegalArgumentException(String.format(
+                        "Entity %s with generated id can't be sharded, assign ids before insert",
+                        clazz.getName()));
+            }
+            boolean registered = false;
+            for (Class<?> entity : SQLiteHelper.getEntities()) {
+                registered |= entity == clazz;
+            }
+            List<Dao<T>> shards = new ArrayList<Dao<T>>(helpers.length);
+            for (SQLiteHelper helper : helpers) {
+                if (!registered) {
+                    SQLiteHelper.createTableIfNotExists(helper.getWritableDatabase(), clazz);
+                }
+                shards.add(new Dao<T>(helper.getWritableDatabase(), clazz));
+            }
+            dao = new ShardedDao<T>(shards, router, executor);
+            daos.put(clazz, dao);
+        }
+        return dao;
+    }
+
+    /**
+     * Close all shard databases and stop query threads.
+     */
+    public synchronized void close() {
+        executor.shutdown();
+        for (SQLiteHelper helper : helpers) {
+            helper.close();
+        }
+        daos.clear();
+    }
+}
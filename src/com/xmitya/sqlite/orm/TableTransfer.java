@@ -0,0 +1,801 @@
+package com.xmitya.sqlite.orm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Base64;
+
+/**
+ * Streams rows of entity table to and from {@link DataFormat}. Rows are
+ * processed one by one, BLOB values larger than
+ * {@link BlobInputStream#CHUNK_SIZE} are read and written by chunks, so
+ * memory usage doesn't depend on table size. Only mapped columns are
+ * exported and accepted on import.
+ *
+ * @author xmitya
+ */
+class TableTransfer {
+
+    private static final int MAGIC = 0x434f524d; // "CORM"
+    private static final int VERSION = 1;
+    private static final byte END = 0;
+    private static final byte ROW = 1;
+    /**
+     * Type tag of BLOB written by chunks: int length and bytes of every
+     * chunk, then 0.
+     */
+    private static final int STREAMED_BLOB = 5;
+    private static final String BLOB_KEY = "$blob";
+    /**
+     * JSON writes integral doubles as integers, such REAL values are written
+     * as object with value string.
+     */
+    private static final String REAL_KEY = "$real";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Source of imported rows.
+     */
+    private interface RowReader {
+
+        String[] getColumns();
+
+        /**
+         * @return values of next row (Long, Double, String, byte[] or null),
+         * null if there are no more rows.
+         */
+        Object[] next() throws IOException;
+    }
+
+    private final Dao<?> dao;
+    private final SQLiteDatabase database;
+    private final EntityMapping mapping;
+    private final String tableName;
+
+    TableTransfer(Dao<?> dao, SQLiteDatabase database, EntityMapping mapping) {
+        this.dao = dao;
+        this.database = database;
+        this.mapping = mapping;
+        this.tableName = mapping.getTableName();
+    }
+
+    private static boolean isBlob(EntityMapping.Column column) {
+        return column.getType() == byte[].class || column.getType() == LazyBlob.class;
+    }
+
+    /**
+     * Mapped columns with id column first, so on import chunks of streamed
+     * BLOB values can be written before row is inserted.
+     */
+    private List<EntityMapping.Column> exportColumns() {
+        List<EntityMapping.Column> columns = new ArrayList<EntityMapping.Column>();
+        columns.add(mapping.getId());
+        for (EntityMapping.Column column : mapping.getColumns()) {
+            if (column != mapping.getId()) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Write all rows of table to stream. Stream is flushed, but not closed.
+     *
+     * @return number of written rows.
+     */
+    long export(OutputStream out, DataFormat format) throws IOException, SQLException {
+        List<EntityMapping.Column> columns = exportColumns();
+        // BLOB columns are selected with flag of value which doesn't fit cursor
+        // window and is read by chunks
+        StringBuilder builder = new StringBuilder("SELECT ");
+        for (EntityMapping.Column column : columns) {
+            String name = column.getName();
+            if (isBlob(column)) {
+                String large = "(typeof(" + name + ")='integer' OR length(" + name + ")>"
+                        + BlobInputStream.CHUNK_SIZE + ")";
+                builder.append("CASE WHEN ").append(large).append(" THEN NULL ELSE ")
+                        .append(name).append(" END, ").append(large).append(',');
+            } else {
+                builder.append(name).append(',');
+            }
+        }
+        builder.deleteCharAt(builder.length() - 1).append(" FROM ").append(tableName);
+        Cursor cursor = null;
+        try {
+            cursor = database.rawQuery(builder.toString(), null);
+            switch (format) {
+                case BINARY:
+                    return exportBinary(cursor, columns, out);
+                case CSV:
+                    return exportCsv(cursor, columns, out);
+                default:
+                    return exportJson(cursor, columns, out);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Opens stream of BLOB value which is too large for cursor.
+     *
+     * @param cursor
+     * @param index  index of value in cursor.
+     * @param column
+     * @return stream or null if value is small and is in cursor.
+     */
+    private InputStream openLarge(Cursor cursor, int index, EntityMapping.Column column)
+            throws SQLException {
+        if (!isBlob(column) || cursor.getInt(index + 1) == 0) {
+            return null;
+        }
+        return dao.openRawBlobInputStream(cursor.getString(0), column.getName());
+    }
+
+    private long exportBinary(Cursor cursor, List<EntityMapping.Column> columns,
+                              OutputStream stream) throws IOException, SQLException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(tableName);
+        out.writeInt(columns.size());
+        for (EntityMapping.Column column : columns) {
+            out.writeUTF(column.getName());
+        }
+        byte[] buf = new byte[BlobInputStream.CHUNK_SIZE];
+        long rows = 0;
+        cursor.moveToFirst();
+        while (!cursor.isAfterLast()) {
+            out.writeByte(ROW);
+            int index = 0;
+            for (EntityMapping.Column column : columns) {
+                InputStream large = openLarge(cursor, index, column);
+                if (large != null) {
+                    out.writeByte(STREAMED_BLOB);
+                    int len;
+                    while ((len = large.read(buf)) > 0) {
+                        out.writeInt(len);
+                        out.write(buf, 0, len);
+                    }
+                    large.close();
+                    out.writeInt(0);
+                } else {
+                    writeBinaryValue(out, cursor, index);
+                }
+                index += isBlob(column) ? 2 : 1;
+            }
+            rows++;
+            cursor.moveToNext();
+        }
+        out.writeByte(END);
+        out.flush();
+        return rows;
+    }
+
+    private static void writeBinaryValue(DataOutputStream out, Cursor cursor, int index)
+            throws IOException {
+        int type = cursor.getType(index);
+        out.writeByte(type);
+        switch (type) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                out.writeLong(cursor.getLong(index));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                out.writeDouble(cursor.getDouble(index));
+                break;
+            case Cursor.FIELD_TYPE_STRING:
+                writeBytes(out, cursor.getString(index).getBytes("UTF-8"));
+                break;
+            case Cursor.FIELD_TYPE_BLOB:
+                writeBytes(out, cursor.getBlob(index));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private long exportCsv(Cursor cursor, List<EntityMapping.Column> columns,
+                           OutputStream stream) throws IOException, SQLException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 64 * 1024);
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeQuoted(out, columns.get(i).getName());
+        }
+        out.write("\r\n");
+        byte[] buf = new byte[BlobInputStream.CHUNK_SIZE];
+        long rows = 0;
+        cursor.moveToFirst();
+        while (!cursor.isAfterLast()) {
+            int index = 0;
+            for (int i = 0; i < columns.size(); i++) {
+                EntityMapping.Column column = columns.get(i);
+                if (i > 0) {
+                    out.write(',');
+                }
+                InputStream large = openLarge(cursor, index, column);
+                if (large != null) {
+                    out.write("0x");
+                    int len;
+                    while ((len = large.read(buf)) > 0) {
+                        writeHex(out, buf, len);
+                    }
+                    large.close();
+                } else {
+                    switch (cursor.getType(index)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            out.write(String.valueOf(cursor.getLong(index)));
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            out.write(String.valueOf(cursor.getDouble(index)));
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            writeQuoted(out, cursor.getString(index));
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            byte[] data = cursor.getBlob(index);
+                            out.write("0x");
+                            writeHex(out, data, data.length);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                index += isBlob(column) ? 2 : 1;
+            }
+            out.write("\r\n");
+            rows++;
+            cursor.moveToNext();
+        }
+        out.flush();
+        return rows;
+    }
+
+    private static void writeHex(Writer out, byte[] data, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.write(HEX[(data[i] >> 4) & 0xf]);
+            out.write(HEX[data[i] & 0xf]);
+        }
+    }
+
+    private static void writeQuoted(Writer out, String value) throws IOException {
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Every row is built in memory as JSON object, including large BLOB
+     * values.
+     */
+    private long exportJson(Cursor cursor, List<EntityMapping.Column> columns,
+                            OutputStream stream) throws IOException, SQLException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 64 * 1024);
+        long rows = 0;
+        try {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                JSONObject row = new JSONObject();
+                int index = 0;
+                for (EntityMapping.Column column : columns) {
+                    String name = column.getName();
+                    InputStream large = openLarge(cursor, index, column);
+                    if (large != null) {
+                        row.put(name, blobObject(readAll(large)));
+                    } else {
+                        switch (cursor.getType(index)) {
+                            case Cursor.FIELD_TYPE_INTEGER:
+                                row.put(name, cursor.getLong(index));
+                                break;
+                            case Cursor.FIELD_TYPE_FLOAT:
+                                double value = cursor.getDouble(index);
+                                if (value == Math.rint(value)) {
+                                    JSONObject real = new JSONObject();
+                                    real.put(REAL_KEY, String.valueOf(value));
+                                    row.put(name, real);
+                                } else {
+                                    row.put(name, value);
+                                }
+                                break;
+                            case Cursor.FIELD_TYPE_STRING:
+                                row.put(name, cursor.getString(index));
+                                break;
+                            case Cursor.FIELD_TYPE_BLOB:
+                                row.put(name, blobObject(cursor.getBlob(index)));
+                                break;
+                            default:
+                                row.put(name, JSONObject.NULL);
+                                break;
+                        }
+                    }
+                    index += isBlob(column) ? 2 : 1;
+                }
+                out.write(row.toString());
+                out.write('\n');
+                rows++;
+                cursor.moveToNext();
+            }
+        } catch (JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+        out.flush();
+        return rows;
+    }
+
+    private static JSONObject blobObject(byte[] data) throws JSONException {
+        JSONObject blob = new JSONObject();
+        blob.put(BLOB_KEY, Base64.encodeToString(data, Base64.NO_WRAP));
+        return blob;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[BlobInputStream.CHUNK_SIZE];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Insert rows from stream into table. Rows are inserted with single
+     * compiled statement, transaction is committed every <b>batchSize</b>
+     * rows. If <b>deferIndexes</b> is true, indexes of table are dropped
+     * before loading and created again after it.
+     *
+     * @return number of inserted rows.
+     * @throws IOException if stream contains column which isn't mapped.
+     */
+    long importRows(InputStream in, DataFormat format, int batchSize, boolean deferIndexes)
+            throws IOException, SQLException {
+        RowReader reader;
+        switch (format) {
+            case BINARY:
+                reader = new BinaryReader(in);
+                break;
+            case CSV:
+                reader = new CsvReader(in);
+                break;
+            default:
+                reader = new JsonReader(in);
+                break;
+        }
+        if (reader.getColumns() == null) {
+            return 0;
+        }
+        EntityMapping.Column[] columns = checkColumns(reader.getColumns());
+        List<String> indexes = deferIndexes ? dropIndexes() : new ArrayList<String>();
+        try {
+            return insertRows(reader, columns, batchSize);
+        } finally {
+            for (String index : indexes) {
+                database.execSQL(index);
+            }
+        }
+    }
+
+    private EntityMapping.Column[] checkColumns(String[] names) throws IOException {
+        EntityMapping.Column[] columns = new EntityMapping.Column[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = mapping.getColumn(names[i]);
+            if (columns[i] == null) {
+                throw new IOException(String.format("Column %s not mapped in table %s",
+                        names[i], tableName));
+            }
+        }
+        return columns;
+    }
+
+    private long insertRows(RowReader reader, EntityMapping.Column[] columns, int batchSize)
+            throws IOException, SQLException {
+        int idIndex = -1;
+        StringBuilder builder = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        StringBuilder values = new StringBuilder(" VALUES(");
+        for (int i = 0; i < columns.length; i++) {
+            builder.append(i == 0 ? "" : ",").append(columns[i].getName());
+            values.append(i == 0 ? "?" : ",?");
+            if (columns[i] == mapping.getId()) {
+                idIndex = i;
+            }
+        }
+        builder.append(')').append(values).append(");");
+        SQLiteStatement statement = database.compileStatement(builder.toString());
+        long rows = 0;
+        database.beginTransaction();
+        try {
+            Object[] row;
+            while ((row = reader.next()) != null) {
+                if (row.length != columns.length) {
+                    throw new IOException("Row " + rows + " has " + row.length
+                            + " values, expected " + columns.length);
+                }
+                List<Integer> large = new ArrayList<Integer>();
+                for (int i = 0; i < row.length; i++) {
+                    Object value = row[i];
+                    if (value == null) {
+                        statement.bindNull(i + 1);
+                    } else if (value instanceof Long) {
+                        statement.bindLong(i + 1, (Long) value);
+                    } else if (value instanceof Double) {
+                        statement.bindDouble(i + 1, (Double) value);
+                    } else if (value instanceof byte[]) {
+                        byte[] data = (byte[]) value;
+                        if (isBlob(columns[i]) && data.length > BlobInputStream.CHUNK_SIZE) {
+                            // written to chunk table after row gets id
+                            large.add(i);
+                            statement.bindLong(i + 1, data.length);
+                        } else {
+                            statement.bindBlob(i + 1, data);
+                        }
+                    } else {
+                        statement.bindString(i + 1, value.toString());
+                    }
+                }
+                long rowId = statement.executeInsert();
+                Object owner = idIndex >= 0 && row[idIndex] != null ? row[idIndex] : Long.valueOf(rowId);
+                for (Integer i : large) {
+                    dao.writeBlobChunks(owner, columns[i].getName(), (byte[]) row[i]);
+                }
+                if (++rows % batchSize == 0) {
+                    database.setTransactionSuccessful();
+                    database.endTransaction();
+                    database.beginTransaction();
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Drop indexes of table.
+     *
+     * @return statements which create dropped indexes.
+     */
+    private List<String> dropIndexes() {
+        List<String> names = new ArrayList<String>();
+        List<String> statements = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            // automatic indexes of PRIMARY KEY and UNIQUE have no sql and can't be dropped
+            cursor = database.rawQuery("SELECT name, sql FROM sqlite_master WHERE type='index'"
+                    + " AND tbl_name=? AND sql IS NOT NULL", new String[]{tableName});
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                names.add(cursor.getString(0));
+                statements.add(cursor.getString(1));
+                cursor.moveToNext();
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        for (String name : names) {
+            database.execSQL("DROP INDEX IF EXISTS \"" + name.replace("\"", "\"\"") + "\";");
+        }
+        return statements;
+    }
+
+    private class BinaryReader implements RowReader {
+
+        private final DataInputStream in;
+        private final String[] columns;
+        private int idIndex = -1;
+
+        BinaryReader(InputStream stream) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a table export");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported export version " + version);
+            }
+            // table name is informational, rows go to table of DAO
+            in.readUTF();
+            columns = new String[in.readInt()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = in.readUTF();
+                if (columns[i].equals(mapping.getId().getName())) {
+                    idIndex = i;
+                }
+            }
+        }
+
+        @Override
+        public String[] getColumns() {
+            return columns;
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            byte tag = in.readByte();
+            if (tag == END) {
+                return null;
+            }
+            if (tag != ROW) {
+                throw new IOException("Corrupted export, unexpected tag " + tag);
+            }
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < row.length; i++) {
+                int type = in.readUnsignedByte();
+                switch (type) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = in.readLong();
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = in.readDouble();
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[i] = new String(readBytes(), "UTF-8");
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = readBytes();
+                        break;
+                    case STREAMED_BLOB:
+                        row[i] = readStreamedBlob(row, i);
+                        break;
+                    default:
+                        throw new IOException("Corrupted export, unknown type " + type);
+                }
+            }
+            return row;
+        }
+
+        private byte[] readBytes() throws IOException {
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return data;
+        }
+
+        /**
+         * Write chunks of BLOB to chunk table while reading them, id of row
+         * precedes BLOB columns in export.
+         *
+         * @return length of value for column.
+         */
+        private Long readStreamedBlob(Object[] row, int index) throws IOException {
+            if (idIndex < 0 || idIndex > index || row[idIndex] == null) {
+                throw new IOException("Corrupted export, id should precede streamed blob");
+            }
+            String column = columns[index];
+            dao.deleteBlobChunks(row[idIndex], column);
+            long length = 0;
+            int len;
+            try {
+                for (int seq = 0; (len = in.readInt()) > 0; seq++) {
+                    byte[] data = new byte[len];
+                    in.readFully(data);
+                    dao.writeBlobChunk(row[idIndex], column, seq, data);
+                    length += len;
+                }
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage());
+            }
+            return length;
+        }
+    }
+
+    private static class CsvReader implements RowReader {
+
+        private final Reader in;
+        private final String[] columns;
+        private final StringBuilder value = new StringBuilder();
+        private int next;
+
+        CsvReader(InputStream stream) throws IOException {
+            in = new BufferedReader(new InputStreamReader(stream, "UTF-8"), 64 * 1024);
+            next = in.read();
+            Object[] header = next();
+            if (header == null) {
+                columns = null;
+                return;
+            }
+            columns = new String[header.length];
+            for (int i = 0; i < header.length; i++) {
+                columns[i] = String.valueOf(header[i]);
+            }
+        }
+
+        @Override
+        public String[] getColumns() {
+            return columns;
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            if (next == -1) {
+                return null;
+            }
+            List<Object> row = new ArrayList<Object>();
+            while (true) {
+                row.add(readValue());
+                if (next == ',') {
+                    next = in.read();
+                    continue;
+                }
+                // end of record
+                if (next == '\r') {
+                    next = in.read();
+                }
+                if (next == '\n') {
+                    next = in.read();
+                }
+                return row.toArray();
+            }
+        }
+
+        private Object readValue() throws IOException {
+            value.setLength(0);
+            if (next == '"') {
+                next = in.read();
+                while (true) {
+                    if (next == -1) {
+                        throw new EOFException("Unterminated quoted value");
+                    }
+                    if (next == '"') {
+                        next = in.read();
+                        if (next != '"') {
+                            return value.toString();
+                        }
+                    }
+                    value.append((char) next);
+                    next = in.read();
+                }
+            }
+            while (next != -1 && next != ',' && next != '\r' && next != '\n') {
+                value.append((char) next);
+                next = in.read();
+            }
+            return parseUnquoted(value.toString());
+        }
+
+        private static Object parseUnquoted(String token) throws IOException {
+            if (token.length() == 0) {
+                return null;
+            }
+            if (token.startsWith("0x")) {
+                byte[] data = new byte[(token.length() - 2) / 2];
+                for (int i = 0; i < data.length; i++) {
+                    int high = Character.digit(token.charAt(2 + i * 2), 16);
+                    int low = Character.digit(token.charAt(3 + i * 2), 16);
+                    if (high < 0 || low < 0) {
+                        throw new IOException("Wrong blob value " + token);
+                    }
+                    data[i] = (byte) ((high << 4) | low);
+                }
+                return data;
+            }
+            try {
+                return Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                try {
+                    return Double.parseDouble(token);
+                } catch (NumberFormatException e1) {
+                    throw new IOException("Wrong unquoted value " + token);
+                }
+            }
+        }
+    }
+
+    private static class JsonReader implements RowReader {
+
+        private final BufferedReader in;
+        private final String[] columns;
+        private JSONObject first;
+
+        JsonReader(InputStream stream) throws IOException {
+            in = new BufferedReader(new InputStreamReader(stream, "UTF-8"), 64 * 1024);
+            first = readObject();
+            if (first == null) {
+                columns = null;
+                return;
+            }
+            List<String> keys = new ArrayList<String>();
+            Iterator<String> iterator = first.keys();
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+            columns = keys.toArray(new String[keys.size()]);
+        }
+
+        private JSONObject readObject() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                try {
+                    return new JSONObject(line);
+                } catch (JSONException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String[] getColumns() {
+            return columns;
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            JSONObject object = first;
+            if (object != null) {
+                first = null;
+            } else {
+                object = readObject();
+            }
+            if (object == null) {
+                return null;
+            }
+            Object[] row = new Object[columns.length];
+            try {
+                for (int i = 0; i < columns.length; i++) {
+                    Object value = object.opt(columns[i]);
+                    if (value == null || value == JSONObject.NULL) {
+                        row[i] = null;
+                    } else if (value instanceof JSONObject) {
+                        JSONObject tagged = (JSONObject) value;
+                        if (tagged.has(REAL_KEY)) {
+                            row[i] = Double.parseDouble(tagged.getString(REAL_KEY));
+                        } else {
+                            row[i] = Base64.decode(tagged.getString(BLOB_KEY), Base64.NO_WRAP);
+                        }
+                    } else if (value instanceof Integer || value instanceof Long) {
+                        row[i] = ((Number) value).longValue();
+                    } else if (value instanceof Number) {
+                        row[i] = ((Number) value).doubleValue();
+                    } else {
+                        row[i] = value.toString();
+                    }
+                }
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage());
+            } catch (NumberFormatException e) {
+                throw new IOException(e.getMessage());
+            }
+            return row;
+        }
+    }
+}
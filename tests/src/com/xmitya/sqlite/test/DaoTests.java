@@ -1,11 +1,23 @@
 package com.xmitya.sqlite.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.xmitya.sqlite.SQLiteHelper;
 import com.xmitya.sqlite.orm.*;
 
+import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
 public class DaoTests extends AndroidTestCase{
@@ -71,6 +83,102 @@ public class DaoTests extends AndroidTestCase{
 		}
 	}
 	
+	@SQLiteTable(tableName = "generated_table")
+	static class GeneratedEntity{
+		@SQLiteField(columnName = "_id", id = true, autoGenerate = true)
+		private long id;
+		@SQLiteField(columnName = "name")
+		private String name;
+		@SQLiteField(columnName = "payload", compress = true, compressThreshold = 16)
+		private String payload;
+		public GeneratedEntity() {
+		}
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public String getPayload() {
+			return payload;
+		}
+		public void setPayload(String payload) {
+			this.payload = payload;
+		}
+	}
+	
+	@SQLiteTable(tableName = "blob_table")
+	static class BlobEntity{
+		@SQLiteField(columnName = "_id", id = true)
+		private String id;
+		@SQLiteField(columnName = "data")
+		private byte[] data;
+		@SQLiteField(columnName = "image")
+		private LazyBlob image;
+		public BlobEntity() {
+		}
+		public String getId() {
+			return id;
+		}
+		public void setId(String id) {
+			this.id = id;
+		}
+		public byte[] getData() {
+			return data;
+		}
+		public void setData(byte[] data) {
+			this.data = data;
+		}
+		public LazyBlob getImage() {
+			return image;
+		}
+		public void setImage(LazyBlob image) {
+			this.image = image;
+		}
+	}
+	
+	@SQLiteTable(tableName = "article_table")
+	static class Article{
+		@SQLiteField(columnName = "_id", id = true)
+		private long id;
+		@SQLiteFullText
+		@SQLiteField(columnName = "title")
+		private String title;
+		@SQLiteField(columnName = "rank")
+		private int rank;
+		public Article() {
+		}
+		public Article(long id, String title, int rank) {
+			this.id = id;
+			this.title = title;
+			this.rank = rank;
+		}
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public String getTitle() {
+			return title;
+		}
+		public void setTitle(String title) {
+			this.title = title;
+		}
+		public int getRank() {
+			return rank;
+		}
+		public void setRank(int rank) {
+			this.rank = rank;
+		}
+	}
+	
 	public void testDao() throws SQLException{
 		DaoFactory.getInstance(getContext()).clearDatabase();
 		
@@ -86,4 +194,366 @@ public class DaoTests extends AndroidTestCase{
 		
 		assertEquals(test, test2);
 	}
+	
+	public void testAggregates() throws SQLException{
+		DaoFactory.getInstance(getContext()).clearDatabase();
+		
+		Dao<TestEntity> testDao = DaoFactory.getInstance(getContext()).getWriterDao(TestEntity.class);
+		for(int i = 1; i <= 4; i++){
+			TestEntity test = new TestEntity();
+			test.setDate(new Date());
+			test.setId("entity_" + i);
+			test.setNumber(i);
+			testDao.insert(test);
+		}
+		
+		assertEquals(4, testDao.count());
+		assertEquals(2, testDao.count("number > ?", "2"));
+		assertTrue(testDao.exists("entity_1"));
+		assertFalse(testDao.exists("entity_5"));
+		assertEquals(1.0, testDao.min("number"), 0.0);
+		assertEquals(4.0, testDao.max("number"), 0.0);
+		assertEquals(10.0, testDao.sum("number"), 0.0);
+		assertEquals(2.5, testDao.avg("number"), 0.0);
+	}
+	
+	public void testAggregatesCompareNumbers() throws SQLException{
+		DaoFactory.getInstance(getContext()).clearDatabase();
+		
+		Dao<TestEntity> testDao = DaoFactory.getInstance(getContext()).getWriterDao(TestEntity.class);
+		int[] numbers = {2, 10, 9, 10};
+		for(int i = 0; i < numbers.length; i++){
+			TestEntity test = new TestEntity();
+			test.setId("entity_" + i);
+			test.setNumber(numbers[i]);
+			testDao.insert(test);
+		}
+		
+		assertEquals(2.0, testDao.min("number"), 0.0);
+		assertEquals(10.0, testDao.max("number"), 0.0);
+		assertEquals(3, testDao.count("number > ?", "2"));
+		List<GroupAggregate> groups = testDao.groupBy("number", Aggregate.COUNT, "number");
+		assertEquals(3, groups.size());
+		assertEquals("2", groups.get(0).getKey());
+		assertEquals("10", groups.get(2).getKey());
+		assertEquals(2, groups.get(2).getCount());
+	}
+	
+	public void testScan() throws SQLException{
+		DaoFactory.getInstance(getContext()).clearDatabase();
+		
+		Dao<TestEntity> testDao = DaoFactory.getInstance(getContext()).getWriterDao(TestEntity.class);
+		for(int i = 1; i <= 3; i++){
+			TestEntity test = new TestEntity();
+			test.setId("entity_" + i);
+			test.setNumber(i);
+			testDao.insert(test);
+		}
+		
+		final int[] sum = new int[1];
+		final TestEntity row = new TestEntity();
+		int rows = testDao.scan(row, new RowCallback<TestEntity>() {
+			@Override
+			public boolean onRow(TestEntity entity) {
+				assertTrue(entity == row);
+				sum[0] += entity.getNumber();
+				return true;
+			}
+		});
+		
+		assertEquals(3, rows);
+		assertEquals(6, sum[0]);
+	}
+	
+	public void testObserverCoalescesTransaction() throws SQLException{
+		DaoFactory.getInstance(getContext()).clearDatabase();
+		
+		Dao<TestEntity> testDao = DaoFactory.getInstance(getContext()).getWriterDao(TestEntity.class);
+		final List<Set<String>> notifications = new ArrayList<Set<String>>();
+		ChangeObserver observer = new ChangeObserver() {
+			@Override
+			public void onChange(String tableName, Set<String> ids) {
+				notifications.add(ids);
+			}
+		};
+		DaoFactory.getInstance(getContext()).getReaderDao(TestEntity.class).registerObserver(observer);
+		
+		testDao.beginTransaction();
+		try{
+			for(int i = 1; i <= 3; i++){
+				TestEntity test = new TestEntity();
+				test.setId("entity_" + i);
+				test.setNumber(i);
+				testDao.insert(test);
+			}
+			assertTrue(notifications.isEmpty());
+			testDao.setTransactionSuccessful();
+		}finally{
+			testDao.endTransaction();
+		}
+		testDao.unregisterObserver(observer);
+		
+		assertEquals(1, notifications.size());
+		assertEquals(3, notifications.get(0).size());
+	}
+	
+	public void testGeneratedId() throws SQLException{
+		Dao<GeneratedEntity> generatedDao = DaoFactory.getInstance(getContext()).getWriterDao(GeneratedEntity.class);
+		generatedDao.dropTable();
+		generatedDao.createTableIfNotExists();
+		
+		GeneratedEntity first = new GeneratedEntity();
+		first.setName("first");
+		long rowId = generatedDao.insert(first);
+		assertEquals(rowId, first.getId());
+		
+		List<GeneratedEntity> batch = new ArrayList<GeneratedEntity>();
+		for(int i = 0; i < 3; i++){
+			GeneratedEntity entity = new GeneratedEntity();
+			entity.setName("batch_" + i);
+			batch.add(entity);
+		}
+		long[] rowIds = generatedDao.insertAll(batch);
+		for(int i = 0; i < 3; i++){
+			assertEquals(rowIds[i], batch.get(i).getId());
+		}
+		
+		assertEquals("batch_1", generatedDao.selectById(rowIds[1]).getName());
+	}
+	
+	public void testCompression() throws SQLException{
+		Dao<GeneratedEntity> generatedDao = DaoFactory.getInstance(getContext()).getWriterDao(GeneratedEntity.class);
+		generatedDao.dropTable();
+		generatedDao.createTableIfNotExists();
+		
+		StringBuilder payload = new StringBuilder();
+		for(int i = 0; i < 100; i++){
+			payload.append("{\"key\":\"value\"}");
+		}
+		GeneratedEntity big = new GeneratedEntity();
+		big.setPayload(payload.toString());
+		generatedDao.insert(big);
+		GeneratedEntity small = new GeneratedEntity();
+		small.setPayload("short");
+		generatedDao.insert(small);
+		
+		assertEquals(payload.toString(), generatedDao.selectById(big.getId()).getPayload());
+		assertEquals("short", generatedDao.selectById(small.getId()).getPayload());
+	}
+	
+	public void testExportImport() throws SQLException{
+		Dao<GeneratedEntity> generatedDao = DaoFactory.getInstance(getContext()).getWriterDao(GeneratedEntity.class);
+		for(DataFormat format : DataFormat.values()){
+			generatedDao.dropTable();
+			generatedDao.createTableIfNotExists();
+			for(int i = 0; i < 3; i++){
+				GeneratedEntity entity = new GeneratedEntity();
+				entity.setName("entity \"" + i + "\",\n");
+				generatedDao.insert(entity);
+			}
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(3, generatedDao.exportTo(out, format));
+			generatedDao.dropTable();
+			generatedDao.createTableIfNotExists();
+			assertEquals(3, generatedDao.importFrom(new ByteArrayInputStream(out.toByteArray()), format, true));
+			
+			assertEquals(3, generatedDao.count());
+			assertEquals("entity \"1\",\n", generatedDao.selectById(2L).getName());
+		}
+	}
+	
+	private static byte[] blobData(int length){
+		byte[] data = new byte[length];
+		for(int i = 0; i < length; i++){
+			data[i] = (byte) (i * 31 + i / 251);
+		}
+		return data;
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[10000];
+		int len;
+		while((len = in.read(buf)) > 0){
+			out.write(buf, 0, len);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+	
+	public void testBlobStreams() throws Exception{
+		Dao<BlobEntity> blobDao = DaoFactory.getInstance(getContext()).getWriterDao(BlobEntity.class);
+		blobDao.dropTable();
+		blobDao.createTableIfNotExists();
+		
+		byte[] large = blobData(300 * 1024 + 17);
+		BlobEntity entity = new BlobEntity();
+		entity.setId("blob");
+		entity.setData(new byte[]{1, 2, 3});
+		entity.setImage(new LazyBlob(large));
+		blobDao.insert(entity);
+		
+		BlobEntity loaded = blobDao.selectById("blob");
+		assertFalse(loaded.getImage().isLoaded());
+		assertTrue(Arrays.equals(large, readAll(loaded.getImage().openInputStream())));
+		assertTrue(Arrays.equals(large, loaded.getImage().getBytes()));
+		
+		OutputStream out = blobDao.openBlobOutputStream("blob", "data");
+		for(int i = 0; i < large.length; i += 1000){
+			out.write(large, i, Math.min(1000, large.length - i));
+		}
+		out.close();
+		assertTrue(Arrays.equals(large, readAll(blobDao.openBlobInputStream("blob", "data"))));
+		assertTrue(Arrays.equals(large, blobDao.selectById("blob").getData()));
+		
+		// abandoned stream doesn't touch previous value
+		byte[] other = blobData(200 * 1024);
+		out = blobDao.openBlobOutputStream("blob", "data");
+		out.write(other, 0, 150 * 1024);
+		assertTrue(Arrays.equals(large, blobDao.selectById("blob").getData()));
+		out = null;
+		assertTrue(Arrays.equals(large, readAll(blobDao.openBlobInputStream("blob", "data"))));
+		
+		out = blobDao.openBlobOutputStream("blob", "data");
+		out.write(other);
+		assertTrue(Arrays.equals(large, blobDao.selectById("blob").getData()));
+		out.close();
+		assertTrue(Arrays.equals(other, blobDao.selectById("blob").getData()));
+		
+		out = blobDao.openBlobOutputStream("blob", "data");
+		out.write(new byte[]{4, 5});
+		out.close();
+		assertTrue(Arrays.equals(new byte[]{4, 5}, readAll(blobDao.openBlobInputStream("blob", "data"))));
+		assertTrue(Arrays.equals(new byte[]{4, 5}, blobDao.selectById("blob").getData()));
+		
+		blobDao.deleteById("blob");
+		assertNull(blobDao.openBlobInputStream("blob", "image"));
+	}
+	
+	public void testExportImportBlobs() throws Exception{
+		Dao<BlobEntity> blobDao = DaoFactory.getInstance(getContext()).getWriterDao(BlobEntity.class);
+		byte[] large = blobData(200 * 1024);
+		for(DataFormat format : DataFormat.values()){
+			blobDao.dropTable();
+			blobDao.createTableIfNotExists();
+			BlobEntity entity = new BlobEntity();
+			entity.setId("blob");
+			entity.setData(large);
+			entity.setImage(new LazyBlob(new byte[]{1, 2, 3}));
+			blobDao.insert(entity);
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			assertEquals(1, blobDao.exportTo(out, format));
+			blobDao.dropTable();
+			blobDao.createTableIfNotExists();
+			assertEquals(1, blobDao.importFrom(new ByteArrayInputStream(out.toByteArray()), format, false));
+			
+			BlobEntity loaded = blobDao.selectById("blob");
+			assertTrue(Arrays.equals(large, loaded.getData()));
+			assertTrue(Arrays.equals(new byte[]{1, 2, 3}, loaded.getImage().getBytes()));
+		}
+		
+		try{
+			blobDao.importFrom(new ByteArrayInputStream("\"_id\",\"unknown\"\r\n\"a\",1\r\n".getBytes("UTF-8")),
+					DataFormat.CSV, false);
+			fail("Unmapped column imported");
+		}catch(SQLException e){
+			// expected
+		}
+	}
+	
+	public void testFullTextSearch() throws SQLException{
+		Dao<Article> articleDao = DaoFactory.getInstance(getContext()).getWriterDao(Article.class);
+		articleDao.dropTable();
+		articleDao.createTableIfNotExists();
+		articleDao.insert(new Article(1, "android sqlite orm", 10));
+		articleDao.insert(new Article(2, "java streams", 20));
+		articleDao.insert(new Article(3, "sqlite sqlite performance", 30));
+		
+		List<Article> found = articleDao.search("sqlite", 10);
+		assertEquals(2, found.size());
+		assertEquals(3, found.get(0).getId());
+		assertEquals(30, found.get(0).getRank());
+		assertEquals("3", articleDao.searchIds("sqlite", 10).get(0));
+		
+		// update and delete triggers
+		Article java = articleDao.selectById(2L);
+		java.setTitle("java sqlite");
+		articleDao.update(java);
+		articleDao.deleteById(1L);
+		assertEquals(2, articleDao.search("sqlite", 10).size());
+		assertEquals(0, articleDao.search("android", 10).size());
+		
+		// rows inserted before full text table appeared are indexed on create
+		SQLiteHelper helper = new SQLiteHelper(getContext());
+		SQLiteDatabase database = helper.getWritableDatabase();
+		database.execSQL("DROP TABLE " + SQLiteHelper.getFullTextTableName("article_table"));
+		SQLiteHelper.createTableIfNotExists(database, Article.class);
+		helper.close();
+		assertEquals(2, articleDao.search("sqlite", 10).size());
+		assertEquals(1, articleDao.search("streams", 10).size());
+		
+		// rank is number of hits, not position of hit
+		StringBuilder title = new StringBuilder();
+		for(int i = 0; i < 2500; i++){
+			title.append("word ");
+		}
+		articleDao.insert(new Article(4, title.append("sqlite").toString(), 40));
+		found = articleDao.search("sqlite", 10);
+		assertEquals(3, found.size());
+		assertEquals(3, found.get(0).getId());
+		found = articleDao.search("sqlite", 2);
+		assertEquals(2, found.size());
+		assertEquals(3, found.get(0).getId());
+	}
+	
+	public void testShardedDao() throws SQLException{
+		for(int i = 0; i < 3; i++){
+			getContext().deleteDatabase(ShardedDaoFactory.getShardDatabaseName("shard_test.db", i));
+		}
+		ShardedDaoFactory factory = new ShardedDaoFactory(getContext(), "shard_test.db", 3, new ShardRouter.Hash());
+		try{
+			ShardedDao<TestEntity> shardedDao = factory.getDao(TestEntity.class);
+			Set<Integer> used = new HashSet<Integer>();
+			for(int i = 0; i < 12; i++){
+				TestEntity test = new TestEntity();
+				test.setId("entity_" + i);
+				test.setNumber((i * 7) % 12);
+				shardedDao.insert(test);
+				used.add(new ShardRouter.Hash().route(test.getId(), 3));
+			}
+			assertTrue(used.size() > 1);
+			
+			// every row is stored only in its own shard
+			for(int i = 0; i < 12; i++){
+				String id = "entity_" + i;
+				assertNotNull(shardedDao.getShard(id).selectById(id));
+				for(int j = 0; j < 12; j++){
+					String other = "entity_" + j;
+					if(shardedDao.getShard(other) != shardedDao.getShard(id)){
+						assertNull(shardedDao.getShard(other).selectById(id));
+					}
+				}
+			}
+			
+			assertEquals(12, shardedDao.count());
+			assertEquals(6, shardedDao.count("number >= ?", "6"));
+			assertEquals(12, shardedDao.getAll().size());
+			assertEquals(6, shardedDao.select("number < ?", "6").size());
+			
+			List<TestEntity> ordered = shardedDao.selectOrdered(null, null, "number", new Comparator<TestEntity>() {
+				@Override
+				public int compare(TestEntity a, TestEntity b) {
+					return a.getNumber() - b.getNumber();
+				}
+			});
+			assertEquals(12, ordered.size());
+			for(int i = 0; i < ordered.size(); i++){
+				assertEquals(i, ordered.get(i).getNumber());
+			}
+		}finally{
+			factory.close();
+		}
+	}
 }